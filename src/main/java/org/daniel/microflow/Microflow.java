@@ -33,6 +33,7 @@ public class Microflow {
             OuterView view = new OuterView();
             OuterController controller = new OuterController(view);
             view.registerController(controller);
+            controller.recoverAutosaves();
         });
 
         checkUpdates();
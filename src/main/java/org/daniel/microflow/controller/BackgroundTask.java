@@ -0,0 +1,60 @@
+package org.daniel.microflow.controller;
+
+import org.daniel.microflow.model.ProgressListener;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Work done outside of the event dispatch thread, such as reading or writing a file, with a progress dialog that lets
+ * the user cancel it. The dialog only shows up if the work takes a while.
+ *
+ * {@link #succeeded(Object)} and {@link #failed(Throwable)} are called on the event dispatch thread once the work is
+ * done; neither of them is called if it was cancelled.
+ */
+abstract class BackgroundTask<T> extends SwingWorker<T, Void> implements ProgressListener {
+
+    private final ProgressMonitor monitor;
+    private int percent;
+
+    BackgroundTask(Component parent, String message) {
+        monitor = new ProgressMonitor(parent, message, null, 0, 100);
+        addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) {
+                monitor.setProgress((Integer) e.getNewValue());
+                if (monitor.isCanceled()) cancel(true);
+            }
+        });
+    }
+
+    @Override
+    public void progress(long done, long total) throws InterruptedIOException {
+        if (isCancelled() || Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Cancelled");
+        }
+        int p = total <= 0 ? 0 : (int) Math.min(100, done * 100 / total);
+        if (p != percent) {
+            percent = p;
+            setProgress(p);
+        }
+    }
+
+    @Override
+    protected final void done() {
+        monitor.close();
+        if (isCancelled()) return;
+        try {
+            succeeded(get());
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            failed(e.getCause());
+        } catch (InterruptedException | CancellationException ignored) { }
+    }
+
+    protected void succeeded(T result) { }
+
+    protected void failed(Throwable cause) { }
+}
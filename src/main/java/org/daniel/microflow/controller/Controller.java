@@ -6,22 +6,27 @@ import org.daniel.microflow.view.ContextMenu;
 import org.daniel.microflow.view.DrawPanel;
 import org.daniel.microflow.view.DiagramView;
 import org.daniel.microflow.view.OuterView;
+import org.daniel.microflow.view.PngOptionsPanel;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.filechooser.FileFilter;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.event.*;
-import java.awt.image.BufferedImage;
 import java.awt.print.PageFormat;
 import java.awt.print.Printable;
 import java.awt.print.PrinterException;
 import java.awt.print.PrinterJob;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static org.daniel.microflow.controller.ExportUtils.C_FILE_EXTENSION;
 
@@ -37,10 +42,26 @@ public class Controller extends MouseAdapter implements ActionListener {
     private boolean draggingPivot;
     private boolean draggingName;
     private boolean draggingActionPivot;
+    private boolean dragging;
     private Point mousePoint, delta;
     private long lastClick;
 
+    /**
+     * Empty space left around the contents of a cropped PNG.
+     */
+    private static final int PNG_MARGIN = 10;
+
+    /**
+     * Drags are applied at most once per frame of this length. The events that come in between only leave the last
+     * one, which carries the whole movement since the previous frame, to be applied when the frame ends.
+     */
+    private static final int FRAME_MILLIS = 16;
+    private final Timer dragFrame;
+    private MouseEvent pendingDrag;
+
     public static final FileFilter MCF_FILTER = new FileNameExtensionFilter("Microflow file (.mcf)", "mcf");
+    public static final FileFilter MCF_BINARY_FILTER =
+            new FileNameExtensionFilter("Microflow binary file, faster for large diagrams (.mcf)", "mcf");
     public static final FileFilter PNG_FILTER = new FileNameExtensionFilter("PNG (.png)", "png");
     public static final FileFilter TXT_FILTER = new FileNameExtensionFilter("Text file (.txt)", "txt");
     public static final FileFilter C_SOURCE = new FileNameExtensionFilter("C source code (" + C_FILE_EXTENSION + ")", C_FILE_EXTENSION.substring(1));
@@ -54,6 +75,14 @@ public class Controller extends MouseAdapter implements ActionListener {
 
     private final List<Node> textElements = new LinkedList<>();
 
+    /**
+     * Runs the file operations of this diagram one after the other, so that two saves never write the same file at
+     * the same time.
+     */
+    private final ExecutorService io;
+    private Journal journal;
+    private final KeyEventDispatcher escape;
+
     public Controller(DiagramView view, Graph graph) {
         this.view = view;
         model = graph;
@@ -66,15 +95,23 @@ public class Controller extends MouseAdapter implements ActionListener {
         draggingName = false;
         mousePoint = new Point();
         delta = new Point();
+        dragFrame = new Timer(FRAME_MILLIS, e -> endFrame());
+        dragFrame.setRepeats(false);
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                r -> new Thread(r, "Microflow I/O"));
+        executor.allowCoreThreadTimeOut(true);
+        io = executor;
 
         //https://stackoverflow.com/questions/5344823/how-can-i-listen-for-key-presses-within-java-swing-across-all-components
-        KeyboardFocusManager.getCurrentKeyboardFocusManager().addKeyEventDispatcher(e -> {
+        escape = e -> {
             if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
                 state = CursorDetail.SELECTING;
                 view.changeCursor(Cursor.getDefaultCursor());
             }
             return false;
-        });
+        };
+        KeyboardFocusManager.getCurrentKeyboardFocusManager().addKeyEventDispatcher(escape);
     }
 
     @Override
@@ -83,6 +120,8 @@ public class Controller extends MouseAdapter implements ActionListener {
         view.changeCursor(state.getCursor());
         JFileChooser chooser;
 
+        Rectangle before = selectionArea();
+        model.beginEdit();
         switch (state) {
             case NEW_FILE:
                 newFile();
@@ -91,7 +130,10 @@ public class Controller extends MouseAdapter implements ActionListener {
                 openFile();
                 break;
             case SAVE_FILE:
-                saveFile();
+                saveFile(false);
+                break;
+            case SAVE_FILE_AS:
+                saveFile(true);
                 break;
             case SAVE_FILE_PNG:
                 saveFilePng();
@@ -103,19 +145,19 @@ public class Controller extends MouseAdapter implements ActionListener {
                 chooser = new JFileChooser();
                 chooser.setFileFilter(null);
                 if (lastGenerationFile != null) chooser.setSelectedFile(lastGenerationFile);
-                lastGenerationFile = ExportUtils.exportSourceCode(model, chooser, view);
+                lastGenerationFile = ExportUtils.exportSourceCode(model, chooser, view, io);
                 break;
             case GEN_MOTOR:
                 chooser = new JFileChooser();
                 chooser.setFileFilter(C_SOURCE);
                 if (lastSourceFile != null) chooser.setSelectedFile(lastSourceFile);
-                lastSourceFile = ExportUtils.exportMotor(model, chooser, view, textElements);
+                lastSourceFile = ExportUtils.exportMotor(model, chooser, view, textElements, io);
                 break;
             case GEN_DICT:
                 chooser = new JFileChooser();
                 chooser.setFileFilter(TXT_FILTER);
                 if (lastTxtFile != null) chooser.setSelectedFile(lastTxtFile);
-                lastTxtFile = ExportUtils.exportDictionary(model, chooser, view);
+                lastTxtFile = ExportUtils.exportDictionary(model, chooser, view, io);
                 break;
             case DELETE_POPUP:
                 deletePopup();
@@ -129,7 +171,11 @@ public class Controller extends MouseAdapter implements ActionListener {
             case UNDO:
                 model.undo();
                 break;
+            case REDO:
+                model.redo();
+                break;
         }
+        model.endEdit();
 
         if (state.getCursor().equals(Cursor.getDefaultCursor())) {
             state = CursorDetail.SELECTING;
@@ -138,11 +184,14 @@ public class Controller extends MouseAdapter implements ActionListener {
         clearAllSelected();
         clicked = null;
 
-        view.repaint();
+        repaintChanged(before);
     }
 
     @Override
     public void mousePressed(MouseEvent e) {
+        flushDrag();
+        Rectangle before = selectionArea();
+        model.beginEdit();
         mousePoint = e.getPoint();
         contextMenu.hideContextMenu();
         switch (state) {
@@ -166,10 +215,35 @@ public class Controller extends MouseAdapter implements ActionListener {
                     clicked instanceof Edge && ((Edge) clicked).nameBoundsContains(e.getPoint()) ||
                     clicked instanceof Edge && ((Edge) clicked).pivotContains(e.getPoint())) {
                 contextMenuHideEditButton();
-                contextMenu.show(view.getDrawPanel(), e.getX(), e.getY());
+                Point shown = view.getDrawPanel().toPanel(e.getPoint());
+                contextMenu.show(view.getDrawPanel(), shown.x, shown.y);
             }
         }
-        e.getComponent().repaint();
+        repaintChanged(before);
+    }
+
+    /**
+     * Area of what an event may change outside of the model: the selected element and the line being drawn.
+     */
+    private Rectangle selectionArea() {
+        Rectangle area = view.getDrawPanel().getLineArea();
+        if (clicked != null) area = union(area, clicked.getExtent());
+        return area;
+    }
+
+    /**
+     * Repaints only what an event changed, from the {@link #selectionArea()} before it, the one after it and what the
+     * model changed.
+     */
+    private void repaintChanged(Rectangle before) {
+        Rectangle area = union(union(before, selectionArea()), model.takeDamage());
+        if (area != null) view.getDrawPanel().repaintDiagram(area);
+    }
+
+    private static Rectangle union(Rectangle a, Rectangle b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return a.union(b);
     }
 
     /**
@@ -184,20 +258,32 @@ public class Controller extends MouseAdapter implements ActionListener {
             chooser.setSelectedFile(lastMcfFile);
         }
         if (chooser.showSaveDialog(view) == JFileChooser.APPROVE_OPTION) {
-            Dimension d = view.getDrawPanel().getSize();
-            BufferedImage img = new BufferedImage(d.width, d.height, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g = img.createGraphics();
-            view.getDrawPanel().paint(g);
-            g.dispose();
-            try {
-                String fileName = chooser.getSelectedFile().getAbsolutePath();
-                if (!fileName.substring(fileName.length() - 4).equalsIgnoreCase(".png")) {
-                    fileName += ".png";
-                }
-                ImageIO.write(img, "png", new File(fileName));
-            } catch (IOException e) {
-                e.printStackTrace();
+            PngOptionsPanel options = view.pngOptionsDialog();
+            if (options == null) return;
+            Rectangle area = options.isCrop() ? model.getContentBounds() : null;
+            if (area == null) {
+                area = new Rectangle(view.getDrawPanel().getDiagramSize());
+            } else {
+                area.grow(PNG_MARGIN, PNG_MARGIN);
             }
+            Rectangle exported = area;
+            double scale = options.getScale();
+            Color background = view.getDrawPanel().getBackground();
+            Graph snapshot = model.snapshot();
+            String path = chooser.getSelectedFile().getAbsolutePath();
+            String fileName = path.toLowerCase().endsWith(".png") ? path : path + ".png";
+            io.execute(new BackgroundTask<Void>(view, "Saving PNG") {
+                @Override
+                protected Void doInBackground() throws IOException {
+                    snapshot.exportPng(fileName, exported, scale, background, this);
+                    return null;
+                }
+
+                @Override
+                protected void failed(Throwable cause) {
+                    JOptionPane.showMessageDialog(view, "Error saving file.");
+                }
+            });
             lastPngFile = chooser.getSelectedFile();
         }
     }
@@ -207,26 +293,50 @@ public class Controller extends MouseAdapter implements ActionListener {
         chooser.setFileFilter(MCF_FILTER);
         if (lastOpenFile != null) chooser.setSelectedFile(lastOpenFile);
         if (chooser.showOpenDialog(view) == JFileChooser.APPROVE_OPTION) {
-            String name = chooser.getSelectedFile().getAbsolutePath();
+            File selected = chooser.getSelectedFile();
             Graph newModel = new Graph();
-            if (newModel.loadFromFile(name)) {
-                File selected = chooser.getSelectedFile();
-                view.getMainView().addTabFromGraph(newModel, selected.getName().substring(0, selected.getName().indexOf('.')), selected);
-                view.getMainView().goToLastTab();
-            } else {
-                JOptionPane.showMessageDialog(view, "Error loading file.");
-            }
-            lastOpenFile = chooser.getSelectedFile();
+            io.execute(new BackgroundTask<Graph>(view, "Opening " + selected.getName()) {
+                @Override
+                protected Graph doInBackground() throws IOException {
+                    newModel.load(selected.getAbsolutePath(), this);
+                    return newModel;
+                }
+
+                @Override
+                protected void succeeded(Graph graph) {
+                    String name = selected.getName();
+                    int dot = name.indexOf('.');
+                    view.getMainView().addTabFromGraph(graph, dot > 0 ? name.substring(0, dot) : name, selected);
+                    view.getMainView().goToLastTab();
+                }
+
+                @Override
+                protected void failed(Throwable cause) {
+                    JOptionPane.showMessageDialog(view, "Error loading file.");
+                }
+            });
+            lastOpenFile = selected;
         }
     }
 
-    private void saveFile() {
+    /**
+     * @param saveAs ask for the file and format even if the diagram was already saved or opened from a file
+     */
+    private void saveFile(boolean saveAs) {
         JFileChooser chooser = new JFileChooser();
-        chooser.setFileFilter(MCF_FILTER);
+        chooser.addChoosableFileFilter(MCF_FILTER);
+        chooser.addChoosableFileFilter(MCF_BINARY_FILTER);
+        chooser.setFileFilter(model.getFileFormat() == FileFormat.BINARY ? MCF_BINARY_FILTER : MCF_FILTER);
         if (lastMcfFile != null) chooser.setSelectedFile(lastMcfFile);
-        if (chooser.getSelectedFile() == null) {
+        FileFormat format = model.getFileFormat();
+        if (saveAs || chooser.getSelectedFile() == null) {
             if (chooser.showSaveDialog(view) == JFileChooser.APPROVE_OPTION) {
                 lastMcfFile = chooser.getSelectedFile();
+                if (chooser.getFileFilter() == MCF_BINARY_FILTER) {
+                    format = FileFormat.BINARY;
+                } else if (chooser.getFileFilter() == MCF_FILTER) {
+                    format = FileFormat.JSON;
+                }
             } else {
                 return;
             }
@@ -242,13 +352,32 @@ public class Controller extends MouseAdapter implements ActionListener {
         if (!extension.equalsIgnoreCase(".mcf")) {
             path += ".mcf";
         }
-        if (model.saveToFile(path)) {
-            String legibleName = lastMcfFile.getName().replace(extension, "");
-            view.getMainView().setTitle("Microflow - " + legibleName);
-            view.getMainView().setCurrentTabTitle(legibleName);
-        } else {
-            JOptionPane.showMessageDialog(view, "Error saving file.");
-        }
+        String file = path;
+        FileFormat fileFormat = format;
+        String legibleName = lastMcfFile.getName().replace(extension, "");
+        if (journal != null) journal.flush();
+        Graph snapshot = model.snapshot();
+        Journal saved = journal;
+        io.execute(new BackgroundTask<Void>(view, "Saving " + legibleName) {
+            @Override
+            protected Void doInBackground() throws IOException {
+                snapshot.save(file, fileFormat, this);
+                if (saved != null) saved.saved(Paths.get(file));
+                return null;
+            }
+
+            @Override
+            protected void succeeded(Void result) {
+                model.setFileFormat(fileFormat);
+                view.getMainView().setTitle("Microflow - " + legibleName);
+                view.getMainView().setTabTitle(view, legibleName);
+            }
+
+            @Override
+            protected void failed(Throwable cause) {
+                JOptionPane.showMessageDialog(view, "Error saving file.");
+            }
+        });
 
     }
 
@@ -318,7 +447,6 @@ public class Controller extends MouseAdapter implements ActionListener {
             clicked = model.getElementAt(e.getPoint());
             if (clicked != null) {
                 clicked.setSelected(true);
-                model.addPhase();
                 selecting(e);
             }
         } else {
@@ -327,16 +455,13 @@ public class Controller extends MouseAdapter implements ActionListener {
                 Edge edge = (Edge) clicked;
                 if (edge.pivotContains(e.getPoint())) {
                     draggingPivot = true;
-                    model.addPhase();
                     return;
                 } else if (edge.nameBoundsContains(e.getPoint())) {
                     draggingName = true;
-                    model.addPhase();
                     //return;
                 }
             } else if (clicked instanceof Action && ((Action) clicked).pivotContains(e.getPoint())) {
                 draggingActionPivot = true;
-                model.addPhase();
                 return;
             }
 
@@ -387,7 +512,6 @@ public class Controller extends MouseAdapter implements ActionListener {
         } else if (clicked instanceof Action) {
             model.deleteAction((Action) clicked);
         }
-        model.addPhase();
         clicked = null;
     }
 
@@ -398,7 +522,11 @@ public class Controller extends MouseAdapter implements ActionListener {
             //if (!((Node) clicked).getType().equals(NodeType.STATE)) {
             if (((Node) clicked).getType().equals(NodeType.TEXT)) {
                 String content = view.multiLineInput("Enter the text you'd like:", "Floating text", clicked.getName());
-                if (content != null) clicked.setName(content);
+                if (content != null) {
+                    model.record(clicked);
+                    clicked.setName(content);
+                    model.elementChanged(clicked);
+                }
                 clicked.setSelected(false);
                 clicked = null;
             } else {
@@ -408,10 +536,11 @@ public class Controller extends MouseAdapter implements ActionListener {
                         clicked.getName(), false);
                 contextMenu.showEditButton(true);
                 if (name != null) {
-                    model.addPhase();
+                    model.record(clicked);
                     clicked.setName(name);
                     clicked.holdName(true);
                     model.changedStateName(n);
+                    model.elementChanged(clicked);
                 }
             }
             //}
@@ -422,7 +551,7 @@ public class Controller extends MouseAdapter implements ActionListener {
                 case INTERFACE:
                     name = askForString("Enter " + e.getType().name().toLowerCase() + ":", clicked.getName(), false);
                     if (name != null) {
-                        model.addPhase();
+                        model.record(clicked);
                         clicked.setName(name);
                         clicked.holdName(true);
                         model.changedInterfaceName(e);
@@ -431,7 +560,7 @@ public class Controller extends MouseAdapter implements ActionListener {
                 case TRANSITION:
                     name = askForString("Enter " + e.getType().name().toLowerCase() + ":", clicked.getName(), true);
                     if (name != null) {
-                        model.addPhase();
+                        model.record(clicked);
                         clicked.setName(name);
                         clicked.holdName(true);
                     }
@@ -440,23 +569,26 @@ public class Controller extends MouseAdapter implements ActionListener {
                     int res = JOptionPane.showOptionDialog(view, "What would you like this operation to be?",
                             "Operation settings", 0, JOptionPane.QUESTION_MESSAGE, null, OPTIONS,
                             null);
+                    if (res >= 0) model.record(e);
                     if (res == 2) { //read
-                        model.addPhase();
                         e.setBidirectional(false);
                         e.setAsRead();
                     } else if (res == 1) { //write
-                        model.addPhase();
                         e.setBidirectional(false);
                         e.setAsWrite();
                     } else if (res == 0) {//read/write
-                        model.addPhase();
                         e.setBidirectional(true);
                     }
                     break;
             }
+            model.elementChanged(e);
         } else if (clicked instanceof Action) {
             String content = view.multiLineInput("Enter the code to execute:", "Actions", clicked.getName());
-            if (content != null) clicked.setName(content);
+            if (content != null) {
+                model.record(clicked);
+                clicked.setName(content);
+                model.elementChanged(clicked);
+            }
             clicked.setSelected(false);
             clicked = null;
         }
@@ -495,7 +627,7 @@ public class Controller extends MouseAdapter implements ActionListener {
             g2.translate(tx, ty);
             g2.scale(scale, scale);
             view.getDrawPanel().setBackground(Color.WHITE);                 //Save ink
-            view.getDrawPanel().paint(g2);
+            view.getDrawPanel().paintDiagram(g2);
             view.getDrawPanel().setBackground(Color.decode("#FEFEFE"));
 
             return Printable.PAGE_EXISTS;
@@ -526,7 +658,6 @@ public class Controller extends MouseAdapter implements ActionListener {
 
     private void possibleAdd(MouseEvent e) {
         Object obj = state.getElementToAdd();
-        model.addPhase();
         if (obj instanceof NodeType) {
             NodeType nt = (NodeType) obj;
             if (nt.equals(NodeType.STATE)) {
@@ -565,6 +696,7 @@ public class Controller extends MouseAdapter implements ActionListener {
             if (element instanceof Edge) {
                 Edge edge = (Edge) element;
                 Action action = new Action(edge, state.getNameToAdd(), e.getPoint());
+                model.record(edge);
                 edge.setAction(action);
                 model.addAction(action);
             }
@@ -573,6 +705,41 @@ public class Controller extends MouseAdapter implements ActionListener {
 
     @Override
     public void mouseDragged(MouseEvent e) {
+        if (dragFrame.isRunning()) {
+            pendingDrag = e;
+        } else {
+            applyDrag(e);
+            dragFrame.restart();
+        }
+    }
+
+    private void endFrame() {
+        if (pendingDrag != null) {
+            MouseEvent drag = pendingDrag;
+            pendingDrag = null;
+            applyDrag(drag);
+            dragFrame.restart();
+        }
+    }
+
+    /**
+     * Applies the drag still waiting for the end of the frame, so that the mouse is released where it was last seen.
+     */
+    private void flushDrag() {
+        dragFrame.stop();
+        if (pendingDrag != null) {
+            MouseEvent drag = pendingDrag;
+            pendingDrag = null;
+            applyDrag(drag);
+        }
+    }
+
+    private void applyDrag(MouseEvent e) {
+        Rectangle before = selectionArea();
+        if (!dragging) {
+            dragging = true;
+            view.getDrawPanel().beginDrag(movingWith(clicked));
+        }
         if (state.equals(CursorDetail.SELECTING)) {
             if (clicked != null) {
                 delta.setLocation(e.getX() - mousePoint.x, e.getY() - mousePoint.y);
@@ -592,11 +759,13 @@ public class Controller extends MouseAdapter implements ActionListener {
             view.getDrawPanel().setLineEnd(e.getPoint());
         }
 
-        e.getComponent().repaint();
+        repaintChanged(before);
     }
 
     @Override
     public void mouseReleased(MouseEvent e) {
+        flushDrag();
+        Rectangle before = selectionArea();
         if (addingEdgeFrom != null) {
             Element element = model.getElementAt(e.getPoint());
             if (element instanceof Node) {
@@ -618,7 +787,35 @@ public class Controller extends MouseAdapter implements ActionListener {
         draggingPivot = false;
         draggingName = false;
         draggingActionPivot = false;
-        e.getComponent().repaint();
+        model.endEdit();
+        if (dragging) {
+            dragging = false;
+            view.getDrawPanel().endDrag();
+        }
+        repaintChanged(before);
+    }
+
+    /**
+     * Elements that move when {@code element} is dragged: the element itself, the edges that follow it and the nodes at
+     * their ends, which are drawn above them.
+     */
+    private List<Element> movingWith(Element element) {
+        List<Element> moving = new ArrayList<>();
+        if (!state.equals(CursorDetail.SELECTING) || element == null) return moving;
+        if (element instanceof Node) {
+            moving.add(element);
+            for (Edge edge : model.getIncidentEdges((Node) element)) {
+                moving.add(edge);
+                moving.add(edge.getN1());
+                moving.add(edge.getN2());
+            }
+        } else {
+            Edge edge = element instanceof Action ? ((Action) element).getParent() : (Edge) element;
+            moving.add(edge);
+            moving.add(edge.getN1());
+            moving.add(edge.getN2());
+        }
+        return moving;
     }
 
     private void clearAllSelected() {
@@ -629,15 +826,11 @@ public class Controller extends MouseAdapter implements ActionListener {
     private void draggedNode(Node node, Point p) {
         Point npt = new Point();
         npt.setLocation(node.getCenter().x + p.x, node.getCenter().y + p.y);
-        node.setCenter(npt);
-        for (Edge e : model.getEdges()) {
-            if (e.getN1() == node || e.getN2() == node) {
-                e.update();
-            }
-        }
+        model.moveNode(node, npt);
     }
 
     private void draggedEdge(Edge edge, Point p) {
+        model.record(edge);
         Point npt = new Point();
         if (draggingName) {
             npt.setLocation(edge.getNamePoint().x + p.x, edge.getNamePoint().y + p.y);
@@ -646,9 +839,11 @@ public class Controller extends MouseAdapter implements ActionListener {
             npt.setLocation(edge.getLocation().x + p.x, edge.getLocation().y + p.y);
             edge.updatePivot(npt);
         }
+        model.elementChanged(edge);
     }
 
     private void draggedAction(Action action, MouseEvent e, Point p) {
+        model.record(action);
         Point npt = new Point();
         npt.setLocation(action.getStart().x + p.x, action.getStart().y + p.y);
         if (draggingActionPivot) {
@@ -657,9 +852,41 @@ public class Controller extends MouseAdapter implements ActionListener {
             action.setStart(npt);
             action.update();
         }
+        model.elementChanged(action);
     }
 
     public void setChooserFile(File f) {
         lastMcfFile = f;
     }
+
+    /**
+     * Starts autosaving the diagram.
+     *
+     * @param source file the diagram was just loaded from and still matches, or null
+     */
+    public void startJournal(File source) {
+        journal = new Journal(model, io, source);
+    }
+
+    /**
+     * Stops autosaving, lets the pending file operations finish in the background and releases the diagram, whose
+     * undo history no longer counts in the global budget.
+     */
+    public void close() {
+        KeyboardFocusManager.getCurrentKeyboardFocusManager().removeKeyEventDispatcher(escape);
+        model.unregisterHistory();
+        if (journal != null) journal.close();
+        io.shutdown();
+    }
+
+    /**
+     * Waits for the file operations still running after {@link #close()}.
+     */
+    public void awaitClosed(long millis) {
+        try {
+            io.awaitTermination(millis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
@@ -32,12 +32,14 @@ public enum CursorDetail {
     NEW_FILE(Cursor.getDefaultCursor(), null, null),
     OPEN_FILE(Cursor.getDefaultCursor(), null, null),
     SAVE_FILE(Cursor.getDefaultCursor(), null, null),
+    SAVE_FILE_AS(Cursor.getDefaultCursor(), null, null),
     SAVE_FILE_PNG(Cursor.getDefaultCursor(), null, null),
     PRINT_FILE(Cursor.getDefaultCursor(), null, null),
     GEN_FILES(Cursor.getDefaultCursor(), null, null),
     GEN_MOTOR(Cursor.getDefaultCursor(), null, null),
     GEN_DICT(Cursor.getDefaultCursor(), null, null),
-    UNDO(Cursor.getDefaultCursor(), null, null);
+    UNDO(Cursor.getDefaultCursor(), null, null),
+    REDO(Cursor.getDefaultCursor(), null, null);
 
     private Cursor cursor;
     private Object elementToAdd;
@@ -8,12 +8,14 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.Executor;
 
 public class ExportUtils {
 
@@ -33,7 +35,7 @@ public class ExportUtils {
     private static final String MACRO_DEFINE_PREFIX = "#define ";
     private static final String LEADING_WHITESPACE_REGEX = "^\\s+";
 
-    public static File exportSourceCode(Graph model, JFileChooser chooser, DiagramView view) {
+    public static File exportSourceCode(Graph model, JFileChooser chooser, DiagramView view, Executor io) {
         if (model.canBeExported(1)) {
             chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
             if (chooser.showSaveDialog(view) == JFileChooser.APPROVE_OPTION) {
@@ -45,145 +47,14 @@ public class ExportUtils {
                     folder = chooser.getSelectedFile().toPath();
                 }
 
-                for (Node n : model.getNodes()) {
-                    if (n.getType().equals(NodeType.TAD)) {
-                        //.c
-                        String filePath = folder.toString() + "/T" + n.getName() + ".c";
-                        String name = "T" + n.getName();
-                        StringBuilder sb = new StringBuilder();
-                        String header;
-
-                        /* HEADER */
-                        sb.append(COMMENT_HEADER).append(sep).append(TAD_H).append(name).append(sep);
-                        sb.append(DESCR_H).append(sep).append(AUTHOR_H).append(System.getProperty("user.name"));
-                        sb.append(sep).append(DATA_H).append(dateFormat.format(date)).append(sep);
-                        sb.append(COMMENT_HEADER).append(sep).append(sep);
-
-                        header = sb.toString();
-                        sb.setLength(0);
-
-                        sb.append(INCLUD_H).append(sep).append(sep).append("#include \"").append(name).append(".h\"");
-                        sb.append(sep).append(sep).append(VAR_CONST_H).append(sep);
-
-                        for (Edge e: model.getEdges()) {
-                            if (e.getN1().equals(n)) {
-                                if (e.getN2().getType().equals(NodeType.VARIABLE)) {
-                                    sb.append(sep).append(e.getN2().getName()).append(";");
-                                }
-                            } else if (e.getN2().equals(n)) {
-                                if (e.getN1().getType().equals(NodeType.VARIABLE)) {
-                                    sb.append(sep).append(e.getN1().getName()).append(";");
-                                }
-                            }
-                        }
-                        sb.append(sep).append(sep).append(FUNC_H).append(sep).append(sep).append("void init");
-                        sb.append(name).append("(void) {").append(sep).append(sep).append("}").append(sep);
-
-                        //Functions
-                        ArrayList<String> alreadyExported = new ArrayList<>();
-                        for (Edge e: model.getEdges()) {
-                            if (e.getN2().equals(n)) {
-                                if (e.getN1().getType().equals(NodeType.TAD)) {
-                                    if (e.getFunctions() != null) {
-                                        //Check if already exported
-                                        if (alreadyExported.contains(e.getName())) continue;
-
-                                        //Get all lines
-                                        ArrayList<String> a = new ArrayList<>();
-                                        String[] f = e.getFunctions().split(";");
-                                        for (String x : f) {
-                                            String[] aux = x.split("\n");
-                                            if (aux.length > 0) {
-                                                Collections.addAll(a, aux);
-                                            }
-                                        }
-
-                                        //Write only function lines
-                                        for (String line : a) {
-                                            if (line.trim().equals("")) continue;
-                                            if (line.startsWith("//")) continue;
-                                            sb.append(sep).append(line).append(" {").append(sep).append(sep);
-                                            sb.append("}").append(sep);
-                                        }
-
-                                        alreadyExported.add(e.getName());
-
-                                    }
-                                    break;
-                                }
-                            }
-                        }
-
-                        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(filePath))) {
-                            writer.write(header);
-                            writer.write(sb.toString());
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        }
-                        sb.setLength(0);
-
-                        //.h
-                        filePath = folder.toString() + "/T" + n.getName() + ".h";
-
-                        sb.append("#ifndef _").append(name.toUpperCase()).append("_H_").append(sep);
-                        sb.append(MACRO_DEFINE_PREFIX + "_").append(name.toUpperCase()).append("_H_").append(sep).append(sep);
-                        sb.append(INCLUD_H);
-                        sb.append(sep);
-
-                        for (Edge e: model.getEdges()) {
-                            if (e.getN1().equals(n) && e.getN2().getType() == NodeType.TAD) {
-                                sb.append(sep).append("#include \"T").append(e.getN2().getName()).append(".h\"");
-                            }
-                        }
-                        sb.append(sep).append(sep).append(FUNC_H).append(sep).append(sep).append("void init");
-                        sb.append(name).append("(void);").append(sep);
-
-                        //Functions
-                        alreadyExported.clear();
-                        for (Edge e: model.getEdges()) {
-                            if (e.getN2().equals(n)) {
-                                if (e.getN1().getType().equals(NodeType.TAD)) {
-                                    if (e.getFunctions() != null) {
-                                        //Check if already exported
-                                        if (alreadyExported.contains(e.getName())) continue;
-
-                                        ArrayList<String> a = new ArrayList<>();
-                                        String[] f = e.getFunctions().split(";");
-                                        for (String x : f) {
-                                            String[] aux = x.split("\n");
-                                            if (aux.length > 0) {
-                                                Collections.addAll(a, aux);
-                                            }
-                                        }
-
-                                        for (String line : a) {
-                                            if (line.trim().equals("")) continue;
-                                            if (line.startsWith("//")) {
-                                                sb.append(line).append(sep);
-                                            } else {
-                                                sb.append(sep).append(line).append(";").append(sep);
-                                            }
-                                        }
-
-                                        alreadyExported.add(e.getName());
-                                    }
-                                }
-                            }
-                        }
-
-                        sb.append(sep).append("#endif");
-
-                        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(filePath))) {
-                            writer.write(header);
-                            writer.write(sb.toString());
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        }
-
-                        sb.setLength(0);
-
+                Graph snapshot = model.snapshot();
+                io.execute(new BackgroundTask<Void>(view, "Creating .c and .h files") {
+                    @Override
+                    protected Void doInBackground() throws IOException {
+                        writeSourceCode(snapshot, folder, date, this);
+                        return null;
                     }
-                }
+                });
             }
         } else {
             JOptionPane.showMessageDialog(null, "TAD diagram can't be empty or with States"
@@ -192,105 +63,168 @@ public class ExportUtils {
         return chooser.getSelectedFile();
     }
 
-    public static File exportMotor(Graph model, JFileChooser chooser, DiagramView view, List<Node> textElements) {
-        if (model.canBeExported(0)) {
-            if (chooser.showSaveDialog(view) == JFileChooser.APPROVE_OPTION) {
-                String filePath = chooser.getSelectedFile().getAbsolutePath();
+    private static void writeSourceCode(Graph model, Path folder, Date date, ProgressListener progress)
+            throws InterruptedIOException {
+        long done = 0;
+        for (Node n : model.getNodes()) {
+            progress.progress(++done, model.getNodes().size());
+            if (n.getType().equals(NodeType.TAD)) {
+                //.c
+                String filePath = folder.toString() + "/T" + n.getName() + ".c";
+                String name = "T" + n.getName();
+                StringBuilder sb = new StringBuilder();
+                String header;
 
-                if (!filePath.endsWith(C_FILE_EXTENSION)) {
-                    filePath += C_FILE_EXTENSION;
-                }
+                /* HEADER */
+                sb.append(COMMENT_HEADER).append(sep).append(TAD_H).append(name).append(sep);
+                sb.append(DESCR_H).append(sep).append(AUTHOR_H).append(System.getProperty("user.name"));
+                sb.append(sep).append(DATA_H).append(dateFormat.format(date)).append(sep);
+                sb.append(COMMENT_HEADER).append(sep).append(sep);
 
-                String name = chooser.getSelectedFile().getName();
-                StringBuilder sb = new StringBuilder();
+                header = sb.toString();
+                sb.setLength(0);
 
-                // Append all the defined constants written in the text elements
-                boolean hasConstant = false;
-                for (Node n : textElements) {
-                    // Check if there is a constant defined in the text element
-                    if (n.getType().equals(NodeType.TEXT)) {
-                        String[] lines = n.getName().split("\n");
-                        for (String line : lines) {
-                            // Remove all the spaces and tabs from the beginning of the line
-                            line = line.replaceAll(LEADING_WHITESPACE_REGEX, "");
-                            if (line.startsWith(MACRO_DEFINE_PREFIX)) {
-                                hasConstant = true;
-                                sb.append(line).append(sep);
-                            }
+                sb.append(INCLUD_H).append(sep).append(sep).append("#include \"").append(name).append(".h\"");
+                sb.append(sep).append(sep).append(VAR_CONST_H).append(sep);
+
+                for (Edge e: model.getIncidentEdges(n)) {
+                    if (e.getN1() == n) {
+                        if (e.getN2().getType().equals(NodeType.VARIABLE)) {
+                            sb.append(sep).append(e.getN2().getName()).append(";");
+                        }
+                    } else {
+                        if (e.getN1().getType().equals(NodeType.VARIABLE)) {
+                            sb.append(sep).append(e.getN1().getName()).append(";");
                         }
                     }
                 }
+                sb.append(sep).append(sep).append(FUNC_H).append(sep).append(sep).append("void init");
+                sb.append(name).append("(void) {").append(sep).append(sep).append("}").append(sep);
+
+                //Functions
+                ArrayList<String> alreadyExported = new ArrayList<>();
+                for (Edge e: model.getIncomingEdges(n)) {
+                    if (e.getN1().getType().equals(NodeType.TAD)) {
+                        if (e.getFunctions() != null) {
+                            //Check if already exported
+                            if (alreadyExported.contains(e.getName())) continue;
+
+                            //Get all lines
+                            ArrayList<String> a = new ArrayList<>();
+                            String[] f = e.getFunctions().split(";");
+                            for (String x : f) {
+                                String[] aux = x.split("\n");
+                                if (aux.length > 0) {
+                                    Collections.addAll(a, aux);
+                                }
+                            }
 
-                // If there are constants, add a separator
-                if (hasConstant) {
-                    sb.append(sep);
-                }
+                            //Write only function lines
+                            for (String line : a) {
+                                if (line.trim().equals("")) continue;
+                                if (line.startsWith("//")) continue;
+                                sb.append(sep).append(line).append(" {").append(sep).append(sep);
+                                sb.append("}").append(sep);
+                            }
 
-                sb.append("void ").append(name).append("(void) {").append(sep);
-                sb.append("\tstatic char state = 0;\n").append(sep).append("\tswitch(state) {").append(sep);
+                            alreadyExported.add(e.getName());
 
-                String aux = sb.toString();
+                        }
+                        break;
+                    }
+                }
 
+                try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(filePath))) {
+                    writer.write(header);
+                    writer.write(sb.toString());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
                 sb.setLength(0);
 
-                HashSet<String> alreadyInSwitch = new HashSet<>();
-                boolean isElseIf;
-				for (Node n : model.getNodes()) {
-                    if (n.getType().equals(NodeType.STATE) && !alreadyInSwitch.contains(n.getName())) {
-                        sb.append("\t\tcase ").append(n.getName()).append(":").append(sep);
-                        isElseIf = false;
-
-                        // Fori loop to iterate over all edges in the model and have its index.
-                        for (int i = 0; i < model.getEdges().size(); i++) {
-                            Edge e = model.getEdges().get(i);
-
-                            if (e.getN1().equals(n)) {
-                                String tabs = "\t\t\t\t";
-                                if (e.getName().length() == 0) {
-                                    tabs = "\t\t\t";
-                                } else {
-                                    isElseIf = appendCondition(sb, e, isElseIf);
-                                }
+                //.h
+                filePath = folder.toString() + "/T" + n.getName() + ".h";
 
-                                if (e.getAction() != null) {
-                                    String[] actions = e.getAction().getName().split(";");
-                                    for (String a : actions) {
-                                        String[] l = a.split("\n");
-                                        for (String b : l) {
-                                            if (b.trim().length() == 0) continue;
-                                            sb.append(tabs).append(b);
-                                            if (b.contains("{") || b.contains("}")) {
-                                                sb.append(sep);
-                                            } else {
-                                                sb.append(";").append(sep);
-                                            }
-                                        }
-                                    }
-                                }
+                sb.append("#ifndef _").append(name.toUpperCase()).append("_H_").append(sep);
+                sb.append(MACRO_DEFINE_PREFIX + "_").append(name.toUpperCase()).append("_H_").append(sep).append(sep);
+                sb.append(INCLUD_H);
+                sb.append(sep);
 
-                                if (e.getN1() != e.getN2()) {
-                                    sb.append(tabs).append("state = ").append(e.getN2().getName()).append(";").append(sep);
+                for (Edge e: model.getOutgoingEdges(n)) {
+                    if (e.getN2().getType() == NodeType.TAD) {
+                        sb.append(sep).append("#include \"T").append(e.getN2().getName()).append(".h\"");
+                    }
+                }
+                sb.append(sep).append(sep).append(FUNC_H).append(sep).append(sep).append("void init");
+                sb.append(name).append("(void);").append(sep);
+
+                //Functions
+                alreadyExported.clear();
+                for (Edge e: model.getIncomingEdges(n)) {
+                    if (e.getN1().getType().equals(NodeType.TAD)) {
+                        if (e.getFunctions() != null) {
+                            //Check if already exported
+                            if (alreadyExported.contains(e.getName())) continue;
+
+                            ArrayList<String> a = new ArrayList<>();
+                            String[] f = e.getFunctions().split(";");
+                            for (String x : f) {
+                                String[] aux = x.split("\n");
+                                if (aux.length > 0) {
+                                    Collections.addAll(a, aux);
                                 }
+                            }
 
-                                if (e.getName().length() > 0) {
-                                    sb.append("\t\t\t}").append(sep);
+                            for (String line : a) {
+                                if (line.trim().equals("")) continue;
+                                if (line.startsWith("//")) {
+                                    sb.append(line).append(sep);
+                                } else {
+                                    sb.append(sep).append(line).append(";").append(sep);
                                 }
                             }
+
+                            alreadyExported.add(e.getName());
                         }
-                        sb.append("\t\t\tbreak;").append(sep);
-                        alreadyInSwitch.add(n.getName());
                     }
                 }
-                sb.append("\t}").append(sep).append("}");
+
+                sb.append(sep).append("#endif");
 
                 try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(filePath))) {
-                    writer.write(aux);
+                    writer.write(header);
                     writer.write(sb.toString());
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
+
                 sb.setLength(0);
 
+            }
+        }
+    }
+
+    public static File exportMotor(Graph model, JFileChooser chooser, DiagramView view, List<Node> textElements,
+                                   Executor io) {
+        if (model.canBeExported(0)) {
+            if (chooser.showSaveDialog(view) == JFileChooser.APPROVE_OPTION) {
+                String selected = chooser.getSelectedFile().getAbsolutePath();
+                String filePath = selected.endsWith(C_FILE_EXTENSION) ? selected : selected + C_FILE_EXTENSION;
+
+                String name = chooser.getSelectedFile().getName();
+                List<String> texts = new ArrayList<>();
+                for (Node n : textElements) {
+                    if (n.getType().equals(NodeType.TEXT)) texts.add(n.getName());
+                }
+                Graph snapshot = model.snapshot();
+                io.execute(new BackgroundTask<Void>(view, "Creating motor") {
+                    @Override
+                    protected Void doInBackground() throws IOException {
+                        writeMotor(snapshot, filePath, name, texts, this);
+                        return null;
+                    }
+                });
+
             }
         } else {
             JOptionPane.showMessageDialog(null, "State diagram can't be empty or with TADs"
@@ -300,6 +234,93 @@ public class ExportUtils {
         return chooser.getSelectedFile();
     }
 
+    private static void writeMotor(Graph model, String filePath, String name, List<String> texts,
+                                   ProgressListener progress) throws InterruptedIOException {
+        StringBuilder sb = new StringBuilder();
+
+        // Append all the defined constants written in the text elements
+        boolean hasConstant = false;
+        for (String text : texts) {
+            // Check if there is a constant defined in the text element
+            String[] lines = text.split("\n");
+            for (String line : lines) {
+                // Remove all the spaces and tabs from the beginning of the line
+                line = line.replaceAll(LEADING_WHITESPACE_REGEX, "");
+                if (line.startsWith(MACRO_DEFINE_PREFIX)) {
+                    hasConstant = true;
+                    sb.append(line).append(sep);
+                }
+            }
+        }
+
+        // If there are constants, add a separator
+        if (hasConstant) {
+            sb.append(sep);
+        }
+
+        sb.append("void ").append(name).append("(void) {").append(sep);
+        sb.append("\tstatic char state = 0;\n").append(sep).append("\tswitch(state) {").append(sep);
+
+        String aux = sb.toString();
+
+        sb.setLength(0);
+
+        HashSet<String> alreadyInSwitch = new HashSet<>();
+        boolean isElseIf;
+        long done = 0;
+        for (Node n : model.getNodes()) {
+            progress.progress(++done, model.getNodes().size());
+            if (n.getType().equals(NodeType.STATE) && !alreadyInSwitch.contains(n.getName())) {
+                sb.append("\t\tcase ").append(n.getName()).append(":").append(sep);
+                isElseIf = false;
+
+                for (Edge e : model.getOutgoingEdges(n)) {
+                    String tabs = "\t\t\t\t";
+                    if (e.getName().length() == 0) {
+                        tabs = "\t\t\t";
+                    } else {
+                        isElseIf = appendCondition(sb, e, isElseIf);
+                    }
+
+                    if (e.getAction() != null) {
+                        String[] actions = e.getAction().getName().split(";");
+                        for (String a : actions) {
+                            String[] l = a.split("\n");
+                            for (String b : l) {
+                                if (b.trim().length() == 0) continue;
+                                sb.append(tabs).append(b);
+                                if (b.contains("{") || b.contains("}")) {
+                                    sb.append(sep);
+                                } else {
+                                    sb.append(";").append(sep);
+                                }
+                            }
+                        }
+                    }
+
+                    if (e.getN1() != e.getN2()) {
+                        sb.append(tabs).append("state = ").append(e.getN2().getName()).append(";").append(sep);
+                    }
+
+                    if (e.getName().length() > 0) {
+                        sb.append("\t\t\t}").append(sep);
+                    }
+                }
+                sb.append("\t\t\tbreak;").append(sep);
+                alreadyInSwitch.add(n.getName());
+            }
+        }
+        sb.append("\t}").append(sep).append("}");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(filePath))) {
+            writer.write(aux);
+            writer.write(sb.toString());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        sb.setLength(0);
+    }
+
     private static boolean appendCondition(StringBuilder sb, Edge e, boolean isElseIf) {
 		// Determine whether to append "if", "else if", or "else"
         if (!isElseIf) {
@@ -316,7 +337,7 @@ public class ExportUtils {
         return isElseIf;
     }
 
-    public static File exportDictionary(Graph model, JFileChooser chooser, DiagramView view) {
+    public static File exportDictionary(Graph model, JFileChooser chooser, DiagramView view, Executor io) {
         if (model.canBeExported(1)) {
             StringBuilder sb = new StringBuilder();
             HashSet<String> added = new HashSet<>();
@@ -328,11 +349,17 @@ public class ExportUtils {
             }
 
             if (chooser.showSaveDialog(view) == JFileChooser.APPROVE_OPTION) {
-                try (FileWriter fw = new FileWriter(chooser.getSelectedFile().getAbsolutePath() + ".txt")) {
-                    fw.write(sb.toString());
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+                String filePath = chooser.getSelectedFile().getAbsolutePath() + ".txt";
+                String dictionary = sb.toString();
+                io.execute(new BackgroundTask<Void>(view, "Creating dictionary") {
+                    @Override
+                    protected Void doInBackground() throws IOException {
+                        try (FileWriter fw = new FileWriter(filePath)) {
+                            fw.write(dictionary);
+                        }
+                        return null;
+                    }
+                });
             }
         } else {
             JOptionPane.showMessageDialog(null, "Dictionary cannot be empty or with states"
@@ -1,10 +1,16 @@
 package org.daniel.microflow.controller;
 
+import org.daniel.microflow.model.Graph;
+import org.daniel.microflow.model.Journal;
 import org.daniel.microflow.view.OuterView;
 
 import javax.swing.*;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
 
 public class OuterController implements ChangeListener {
 
@@ -21,4 +27,59 @@ public class OuterController implements ChangeListener {
         String name = ((JLabel) selected.getComponent(0)).getText();
         view.setTitle("Microflow - " + name);
     }
+
+    /**
+     * Offers to reopen the diagrams autosaved by a session that ended without closing them, usually a crash.
+     */
+    public void recoverAutosaves() {
+        List<Path> abandoned = Journal.findAbandoned();
+        if (abandoned.isEmpty()) return;
+
+        String message = abandoned.size() == 1
+                ? "A diagram was not closed properly the last time. Would you like to recover it?"
+                : abandoned.size() + " diagrams were not closed properly the last time. Would you like to recover them?";
+        if (JOptionPane.showConfirmDialog(view, message, "Recover diagrams", JOptionPane.YES_NO_OPTION)
+                != JOptionPane.YES_OPTION) {
+            for (Path journal : abandoned) Journal.discard(journal);
+            return;
+        }
+
+        for (Path journal : abandoned) {
+            new BackgroundTask<Graph>(view, "Recovering diagram") {
+                private File source;
+
+                @Override
+                protected Graph doInBackground() throws IOException {
+                    source = Journal.getSource(journal);
+                    Graph graph = new Graph();
+                    graph.recover(journal);
+                    return graph;
+                }
+
+                @Override
+                protected void succeeded(Graph graph) {
+                    String name = "Recovered diagram";
+                    if (source != null) {
+                        name = source.getName();
+                        int dot = name.lastIndexOf('.');
+                        if (dot > 0) name = name.substring(0, dot);
+                    }
+                    view.addRecoveredTab(graph, name, source);
+                    view.goToLastTab();
+                    Journal.discard(journal);
+                }
+
+                @Override
+                protected void failed(Throwable cause) {
+                    if (cause instanceof Journal.StaleException) {
+                        JOptionPane.showMessageDialog(view, "The diagram can't be recovered: " + cause.getMessage()
+                                + ".");
+                        Journal.discard(journal);
+                    } else {
+                        JOptionPane.showMessageDialog(view, "Error recovering diagram.");
+                    }
+                }
+            }.execute();
+        }
+    }
 }
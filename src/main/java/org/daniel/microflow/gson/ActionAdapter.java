@@ -0,0 +1,109 @@
+package org.daniel.microflow.gson;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.daniel.microflow.model.Action;
+import org.daniel.microflow.model.Edge;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Reads and writes an {@link Action} with the id of its edge. Older versions store the action inside its edge instead,
+ * those are read without a parent, which has to be set afterwards.
+ */
+public class ActionAdapter extends TypeAdapter<Action> {
+
+    private final Map<Integer, Edge> edges;
+    private final PointAdapter pointAdapter = new PointAdapter();
+
+    /**
+     * @param edges edges of the graph by id, used to find the parent of the actions read
+     */
+    public ActionAdapter(Map<Integer, Edge> edges) {
+        this.edges = edges;
+    }
+
+    @Override
+    public void write(JsonWriter out, Action action) throws IOException {
+        out.beginObject();
+        out.name("id").value(action.getId());
+        if (action.getParent() != null) out.name("edge").value(action.getParent().getId());
+        out.name("name").value(action.getName());
+        if (action.nameHold()) out.name("holdName").value(true);
+        out.name("start");
+        pointAdapter.write(out, action.getStart());
+        out.name("end");
+        pointAdapter.write(out, action.getEnd());
+        out.endObject();
+    }
+
+    @Override
+    public Action read(JsonReader in) throws IOException {
+        int id = 0;
+        Edge parent = null;
+        Point start = null, end = null;
+        String name = "";
+        boolean holdName = false;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String field = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (field) {
+                case "id":
+                    id = in.nextInt();
+                    break;
+                case "edge":
+                    parent = edges == null ? null : edges.get(in.nextInt());
+                    if (parent == null) throw new JsonParseException("Action of an unknown edge at " + in.getPath());
+                    break;
+                case "start":
+                    start = pointAdapter.read(in);
+                    break;
+                case "end":
+                    end = pointAdapter.read(in);
+                    break;
+                case "name":
+                    name = in.nextString();
+                    break;
+                case "holdName":
+                    holdName = in.nextBoolean();
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        if (start == null || end == null) {
+            throw new JsonParseException("Incomplete action at " + in.getPath());
+        }
+        Action action = new Action(name, start, end);
+        action.setId(id);
+        action.holdName(holdName);
+        if (parent != null) {
+            action.setParent(parent);
+            parent.setAction(action);
+        }
+        return action;
+    }
+
+    /**
+     * Older versions store every action twice, inside its edge and in the list of the graph. Both copies have the same
+     * key: their id or, for files saved before ids existed, their contents.
+     */
+    public static String key(Action action) {
+        if (action.getId() > 0) return "#" + action.getId();
+        return action.getStart().x + "," + action.getStart().y + ',' + action.getEnd().x + ',' + action.getEnd().y
+                + ',' + action.getName();
+    }
+}
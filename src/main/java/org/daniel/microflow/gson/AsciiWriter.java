@@ -0,0 +1,58 @@
+package org.daniel.microflow.gson;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Replaces every non ASCII character with a unicode escape sequence. Outside of strings JSON is plain ASCII, so the
+ * output is the same document but it reads the same whatever the charset assumed by the reader.
+ */
+public class AsciiWriter extends FilterWriter {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    public AsciiWriter(Writer out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (c < 0x80) {
+            out.write(c);
+        } else {
+            out.write('\\');
+            out.write('u');
+            out.write(HEX[(c >> 12) & 0xF]);
+            out.write(HEX[(c >> 8) & 0xF]);
+            out.write(HEX[(c >> 4) & 0xF]);
+            out.write(HEX[c & 0xF]);
+        }
+    }
+
+    @Override
+    public void write(char[] buf, int off, int len) throws IOException {
+        int start = off;
+        for (int i = off; i < off + len; i++) {
+            if (buf[i] >= 0x80) {
+                out.write(buf, start, i - start);
+                write(buf[i]);
+                start = i + 1;
+            }
+        }
+        out.write(buf, start, off + len - start);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        int start = off;
+        for (int i = off; i < off + len; i++) {
+            if (str.charAt(i) >= 0x80) {
+                out.write(str, start, i - start);
+                write(str.charAt(i));
+                start = i + 1;
+            }
+        }
+        out.write(str, start, off + len - start);
+    }
+}
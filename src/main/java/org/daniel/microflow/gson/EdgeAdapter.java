@@ -0,0 +1,157 @@
+package org.daniel.microflow.gson;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.daniel.microflow.model.Action;
+import org.daniel.microflow.model.Edge;
+import org.daniel.microflow.model.EdgeType;
+import org.daniel.microflow.model.Graph;
+import org.daniel.microflow.model.Node;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Reads and writes an {@link Edge}, referring to its nodes by id. Only what the user chose is written, the curve,
+ * arrows and bounds are computed again on load.
+ *
+ * Files saved by older versions have a full copy of both nodes and of the action inside every edge, along with the
+ * derived geometry. The copies are only used to look up the nodes already read, the geometry is skipped.
+ */
+public class EdgeAdapter extends TypeAdapter<Edge> {
+
+    private final Graph graph;
+    private final Map<String, Node> nodes;
+    private final NodeAdapter nodeAdapter = new NodeAdapter();
+    private final ActionAdapter actionAdapter = new ActionAdapter(null);
+    private final PointAdapter pointAdapter = new PointAdapter();
+
+    /**
+     * @param graph graph the edges read belong to
+     * @param nodes nodes of the graph by {@link NodeAdapter#idKey(int)} and {@link NodeAdapter#key(Node)}
+     */
+    public EdgeAdapter(Graph graph, Map<String, Node> nodes) {
+        this.graph = graph;
+        this.nodes = nodes;
+    }
+
+    @Override
+    public void write(JsonWriter out, Edge edge) throws IOException {
+        out.beginObject();
+        out.name("id").value(edge.getId());
+        out.name("type").value(edge.getType().name());
+        if (edge.getName() != null) out.name("name").value(edge.getName());
+        if (edge.nameHold()) out.name("holdName").value(true);
+        out.name("n1").value(edge.getN1().getId());
+        out.name("n2").value(edge.getN2().getId());
+        if (edge.isReversed()) out.name("reversed").value(true);
+        out.name("pivotPoint");
+        pointAdapter.write(out, edge.getLocation());
+        if (!edge.getType().equals(EdgeType.OPERATION) && edge.getNamePoint() != null) {
+            out.name("namePoint");
+            pointAdapter.write(out, edge.getNamePoint());
+        }
+        if (edge.isBidirectional()) out.name("bidir").value(true);
+        if (edge.getFunctions() != null && !edge.getFunctions().isEmpty()) {
+            out.name("functions").value(edge.getFunctions());
+        }
+        out.endObject();
+    }
+
+    @Override
+    public Edge read(JsonReader in) throws IOException {
+        int id = 0;
+        EdgeType type = null;
+        String n1 = null, n2 = null, originalN1 = null, originalN2 = null;
+        String name = null, functions = "";
+        Action action = null;
+        Point pivotPoint = null, namePoint = null;
+        boolean reversed = false, bidir = false, holdName = false;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String field = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (field) {
+                case "id":
+                    id = in.nextInt();
+                    break;
+                case "type":
+                    type = EdgeType.valueOf(in.nextString());
+                    break;
+                case "n1":
+                    n1 = nodeAdapter.readKey(in);
+                    break;
+                case "n2":
+                    n2 = nodeAdapter.readKey(in);
+                    break;
+                case "reversed":
+                    reversed = in.nextBoolean();
+                    break;
+                case "originalN1":
+                    originalN1 = nodeAdapter.readKey(in);
+                    break;
+                case "originalN2":
+                    originalN2 = nodeAdapter.readKey(in);
+                    break;
+                case "functions":
+                    functions = in.nextString();
+                    break;
+                case "action":
+                    action = actionAdapter.read(in);
+                    break;
+                case "pivotPoint":
+                    pivotPoint = pointAdapter.read(in);
+                    break;
+                case "bidir":
+                    bidir = in.nextBoolean();
+                    break;
+                case "namePoint":
+                    namePoint = pointAdapter.read(in);
+                    break;
+                case "name":
+                    name = in.nextString();
+                    break;
+                case "holdName":
+                    holdName = in.nextBoolean();
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        if (type == null || pivotPoint == null) {
+            throw new JsonParseException("Incomplete edge at " + in.getPath());
+        }
+        Node from = resolve(n1, in), to = resolve(n2, in);
+        Node originalFrom = reversed ? to : from, originalTo = reversed ? from : to;
+        if (originalN1 != null) originalFrom = resolve(originalN1, in);
+        if (originalN2 != null) originalTo = resolve(originalN2, in);
+        if (type.equals(EdgeType.OPERATION)) namePoint = null;
+
+        Edge edge = new Edge(type, name, from, to, originalFrom, originalTo, pivotPoint, namePoint, bidir, functions,
+                graph);
+        edge.setId(id);
+        edge.holdName(holdName);
+        if (action != null) {
+            action.setParent(edge);
+            edge.setAction(action);
+        }
+        return edge;
+    }
+
+    private Node resolve(String key, JsonReader in) {
+        Node n = key == null ? null : nodes.get(key);
+        if (n == null) throw new JsonParseException("Edge to an unknown node at " + in.getPath());
+        return n;
+    }
+}
@@ -0,0 +1,180 @@
+package org.daniel.microflow.gson;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.daniel.microflow.model.Action;
+import org.daniel.microflow.model.Edge;
+import org.daniel.microflow.model.Graph;
+import org.daniel.microflow.model.Node;
+import org.daniel.microflow.model.ProgressListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams a whole {@link Graph} in the .mcf format, element by element, without building the document in memory.
+ * Edges refer to their nodes and actions to their edge by id; files saved before ids existed are matched by contents
+ * instead and get ids once loaded.
+ *
+ * Nodes, edges and actions are written in this order, but a file where they come in another order can still be read:
+ * the elements read too early are kept as a tree until the ones they refer to are known.
+ */
+public class GraphAdapter extends TypeAdapter<Graph> {
+
+    /**
+     * Version of the format written. Version 2 added ids, version 3 dropped the derived geometry and the copies of the
+     * nodes and actions inside the edges. Files without a version are older than both.
+     */
+    public static final int VERSION = 3;
+
+    private final NodeAdapter nodeAdapter = new NodeAdapter();
+    private final ProgressListener progress;
+
+    public GraphAdapter() {
+        this(ProgressListener.NONE);
+    }
+
+    /**
+     * @param progress told about every element written, out of all the elements of the graph
+     */
+    public GraphAdapter(ProgressListener progress) {
+        this.progress = progress;
+    }
+
+    @Override
+    public void write(JsonWriter out, Graph graph) throws IOException {
+        EdgeAdapter edgeAdapter = new EdgeAdapter(graph, null);
+        ActionAdapter actionAdapter = new ActionAdapter(null);
+        long total = graph.getNodes().size() + graph.getEdges().size() + graph.getActions().size();
+        long done = 0;
+
+        out.beginObject();
+        out.name("version").value(VERSION);
+        out.name("nodes").beginArray();
+        for (Node n : graph.getNodes()) {
+            nodeAdapter.write(out, n);
+            progress.progress(++done, total);
+        }
+        out.endArray();
+        out.name("edges").beginArray();
+        for (Edge e : graph.getEdges()) {
+            edgeAdapter.write(out, e);
+            progress.progress(++done, total);
+        }
+        out.endArray();
+        out.name("actions").beginArray();
+        for (Action a : graph.getActions()) {
+            actionAdapter.write(out, a);
+            progress.progress(++done, total);
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    /**
+     * Returns a new graph with the elements read. The counters are not read, they are up to the caller.
+     */
+    @Override
+    public Graph read(JsonReader in) throws IOException {
+        Graph graph = new Graph();
+        Map<String, Node> nodes = new HashMap<>();
+        Map<Integer, Edge> edges = new HashMap<>();
+        EdgeAdapter edgeAdapter = new EdgeAdapter(graph, nodes);
+        ActionAdapter actionAdapter = new ActionAdapter(edges);
+        boolean nodesRead = false, edgesRead = false;
+        JsonArray pendingEdges = null, pendingActions = null;
+        List<Action> listed = new ArrayList<>();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String field = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (field) {
+                case "version":
+                    int version = in.nextInt();
+                    if (version > VERSION) {
+                        throw new JsonParseException("File saved by a newer version (format " + version + ")");
+                    }
+                    break;
+                case "nodes":
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        Node n = nodeAdapter.read(in);
+                        if (n.getId() > 0) nodes.put(NodeAdapter.idKey(n.getId()), n);
+                        nodes.put(NodeAdapter.key(n), n);
+                        graph.addNode(n);
+                    }
+                    in.endArray();
+                    nodesRead = true;
+                    break;
+                case "edges":
+                    if (nodesRead) {
+                        in.beginArray();
+                        while (in.hasNext()) addEdge(graph, edges, edgeAdapter.read(in));
+                        in.endArray();
+                        edgesRead = true;
+                    } else {
+                        pendingEdges = JsonParser.parseReader(in).getAsJsonArray();
+                    }
+                    break;
+                case "actions":
+                    if (edgesRead) {
+                        in.beginArray();
+                        while (in.hasNext()) listed.add(actionAdapter.read(in));
+                        in.endArray();
+                    } else {
+                        pendingActions = JsonParser.parseReader(in).getAsJsonArray();
+                    }
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        if (pendingEdges != null) {
+            for (JsonElement e : pendingEdges) addEdge(graph, edges, edgeAdapter.fromJsonTree(e));
+        }
+        if (pendingActions != null) {
+            for (JsonElement a : pendingActions) listed.add(actionAdapter.fromJsonTree(a));
+        }
+        addActions(graph, listed);
+        return graph;
+    }
+
+    private void addEdge(Graph graph, Map<Integer, Edge> edges, Edge e) {
+        if (e.getId() > 0) edges.put(e.getId(), e);
+        graph.addEdge(e);
+    }
+
+    /**
+     * Actions are added in the order of the list of the graph. In files of older versions that list only has copies of
+     * the actions inside the edges, which are the ones added; copies without an edge are dropped, as they could never
+     * be shown.
+     */
+    private void addActions(Graph graph, List<Action> listed) {
+        Map<String, Action> owned = new LinkedHashMap<>();
+        for (Edge e : graph.getEdges()) {
+            if (e.getAction() != null) owned.put(ActionAdapter.key(e.getAction()), e.getAction());
+        }
+        for (Action a : listed) {
+            Action own = owned.remove(ActionAdapter.key(a));
+            if (own != null) graph.addAction(own);
+        }
+        for (Action a : owned.values()) graph.addAction(a);
+    }
+}
@@ -0,0 +1,112 @@
+package org.daniel.microflow.gson;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.daniel.microflow.model.Node;
+import org.daniel.microflow.model.NodeType;
+
+import java.awt.Point;
+import java.io.IOException;
+
+/**
+ * Reads and writes a {@link Node}. Only what the user chose is written, the bounds are computed again on load.
+ */
+public class NodeAdapter extends TypeAdapter<Node> {
+
+    private final PointAdapter pointAdapter = new PointAdapter();
+
+    @Override
+    public void write(JsonWriter out, Node node) throws IOException {
+        out.beginObject();
+        out.name("id").value(node.getId());
+        out.name("type").value(node.getType().name());
+        out.name("name").value(node.getName());
+        if (node.nameHold()) out.name("holdName").value(true);
+        out.name("center");
+        pointAdapter.write(out, node.getCenter());
+        out.endObject();
+    }
+
+    @Override
+    public Node read(JsonReader in) throws IOException {
+        Fields f = readFields(in);
+        if (f.type == null || f.center == null || f.name == null) {
+            throw new JsonParseException("Incomplete node at " + in.getPath());
+        }
+        Node node = new Node(f.type, f.name, f.center, null);
+        node.setId(f.id);
+        node.holdName(f.holdName);
+        return node;
+    }
+
+    /**
+     * Reads a reference to a node and returns its key. References are ids, but files saved by older versions store a
+     * copy of the node instead, identified by its id or, before ids existed, by its {@link #key(Node) contents}.
+     */
+    public String readKey(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NUMBER) return idKey(in.nextInt());
+        Fields f = readFields(in);
+        if (f.id > 0) return idKey(f.id);
+        return f.type == null || f.center == null ? null : key(f.type, f.center, f.name);
+    }
+
+    public static String idKey(int id) {
+        return "#" + id;
+    }
+
+    /**
+     * Without an id, nodes are told apart by their type, position and name, the bounds being computed from those.
+     */
+    public static String key(Node node) {
+        return key(node.getType(), node.getCenter(), node.getName());
+    }
+
+    private static String key(NodeType type, Point center, String name) {
+        return type.name() + ',' + center.x + ',' + center.y + ',' + name;
+    }
+
+    private Fields readFields(JsonReader in) throws IOException {
+        Fields f = new Fields();
+        in.beginObject();
+        while (in.hasNext()) {
+            String field = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (field) {
+                case "id":
+                    f.id = in.nextInt();
+                    break;
+                case "center":
+                    f.center = pointAdapter.read(in);
+                    break;
+                case "type":
+                    f.type = NodeType.valueOf(in.nextString());
+                    break;
+                case "name":
+                    f.name = in.nextString();
+                    break;
+                case "holdName":
+                    f.holdName = in.nextBoolean();
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        return f;
+    }
+
+    private static class Fields {
+        private int id;
+        private Point center;
+        private NodeType type;
+        private String name;
+        private boolean holdName;
+    }
+}
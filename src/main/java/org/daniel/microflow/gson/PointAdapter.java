@@ -1,31 +1,53 @@
 package org.daniel.microflow.gson;
 
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParseException;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 import java.awt.Point;
-import java.lang.reflect.Type;
+import java.io.IOException;
 
-public class PointAdapter implements JsonSerializer<Point>, JsonDeserializer<Point> {
+/**
+ * Writes a point as {@code [x, y]}. Points written as {@code {"x": x, "y": y}} by older versions are read as well.
+ */
+public class PointAdapter extends TypeAdapter<Point> {
 
     @Override
-    public JsonElement serialize(Point point, Type type, JsonSerializationContext context) {
-        JsonObject obj = new JsonObject();
-        obj.addProperty("x", point.x);
-        obj.addProperty("y", point.y);
-        return obj;
+    public void write(JsonWriter out, Point point) throws IOException {
+        out.beginArray();
+        out.value(point.x);
+        out.value(point.y);
+        out.endArray();
     }
 
     @Override
-    public Point deserialize(JsonElement json, Type type, JsonDeserializationContext context) throws JsonParseException {
-        JsonObject obj = json.getAsJsonObject();
-        int x = obj.get("x").getAsInt();
-        int y = obj.get("y").getAsInt();
-        return new Point(x, y);
+    public Point read(JsonReader in) throws IOException {
+        Point point = new Point();
+        if (in.peek() == JsonToken.BEGIN_ARRAY) {
+            in.beginArray();
+            point.x = in.nextInt();
+            point.y = in.nextInt();
+            while (in.hasNext()) in.skipValue();
+            in.endArray();
+            return point;
+        }
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "x":
+                    point.x = in.nextInt();
+                    break;
+                case "y":
+                    point.y = in.nextInt();
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        return point;
     }
 }
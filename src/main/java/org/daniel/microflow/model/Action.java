@@ -18,9 +18,64 @@ public class Action extends Element {
         setEnd(new Point(start.x + 160, start.y));
     }
 
+    /**
+     * Restores an action read from a file. The parent edge is set afterwards with {@link #setParent(Edge)}.
+     */
+    public Action(String name, Point start, Point end) {
+        super(name);
+        this.start = start;
+        this.end = end;
+        updatePivot();
+        setBounds();
+    }
+
+    Action(Action other, Edge parent) {
+        super(other);
+        this.parent = parent;
+        start = new Point(other.start);
+        end = new Point(other.end);
+        pivot = new Rectangle(other.pivot);
+    }
+
+    /**
+     * Lays out the code next to the line, which is what the bounds cover. Done whenever the line or the code change, so
+     * that it doesn't depend on the action having been painted.
+     */
     @Override
     protected void setBounds() {
-        //inutil, se calcula cuando se pinta
+        Point p = end.x > start.x ? start : end;
+        Point p2 = end.x > start.x ? end : start;
+        TextMetrics.Text text = TextMetrics.of(FONT_MED, name);
+        int lines = text.lines.length;
+        if (lines > 1) {
+            int linesAbove = (int) Math.ceil(lines / 2.0);
+            int y1 = p.y - (text.ascent * linesAbove) + 11;
+            int y2 = p.y + (text.ascent * (lines - linesAbove)) + 11;
+            setBounds(p.x, y1, p2.x - p.x, y2 - y1);
+        } else {
+            setBounds(p.x, p.y, p2.x - p.x, text.ascent);
+        }
+    }
+
+    @Override
+    public void setName(String name) {
+        super.setName(name);
+        setBounds();
+    }
+
+    /**
+     * The bounds, widened to the line, its dot, the pivot and the code, which may be longer than the line.
+     */
+    @Override
+    public Rectangle getExtent() {
+        TextMetrics.Text text = TextMetrics.of(FONT_MED, name);
+        Point p = end.x > start.x ? start : end;
+        Rectangle extent = new Rectangle(bounds);
+        extent.add(start);
+        extent.add(end.x, end.y + 20);
+        extent.add(p.x + 20 + text.longest, bounds.y);
+        extent.grow(20, text.ascent);
+        return extent;
     }
 
     @Override
@@ -41,23 +96,18 @@ public class Action extends Element {
         Point p = endGstart ? start : end;
         Point p2 = endGstart ? end : start;
         g.setFont(FONT_MED);
-        String[] lines = name.replace("\t", "    ").split("\n");
+        TextMetrics.Text text = TextMetrics.of(FONT_MED, name);
+        String[] lines = text.lines;
         if (lines.length > 1) {
             int linesAbove = (int) Math.ceil(lines.length / 2.0);
-            FontMetrics metrics = g.getFontMetrics();
-            int height = metrics.getAscent();
+            int height = text.ascent;
 
-            int y1 = p.y - (height * linesAbove) + 11;
-            int y2 = p.y + (height * (lines.length - linesAbove)) + 11;
-
-            bounds.setBounds(p.x, y1, p2.x - p.x, y2 - y1); //porquería
             for (int i = 0; i < lines.length; i++) {
                 g.setColor(Color.BLACK);
                 String line = lines[i];
                 g.drawString(line, p.x + 20, p.y - (height * (linesAbove - i - 1)) + 11);
             }
         } else {
-            bounds.setBounds(p.x, p.y, p2.x - p.x, g.getFontMetrics().getAscent());
             if (endGstart)
                 g.drawString(name, p.x + 20, start.y + 13);
             else
@@ -65,6 +115,12 @@ public class Action extends Element {
         }
     }
 
+    private void setBounds(int x, int y, int width, int height) {
+        // The extent also follows the line, so the graph is told even if the bounds stay the same
+        bounds.setBounds(x, y, width, height);
+        if (parent != null && parent.getGraph() != null) parent.getGraph().elementChanged(this);
+    }
+
     public void setParent(Edge parent) {
         this.parent = parent;
     }
@@ -110,6 +166,51 @@ public class Action extends Element {
         setStart(start);
     }
 
+    @Override
+    ElementState saveState() {
+        return new State(this);
+    }
+
+    @Override
+    void restoreState(ElementState state) {
+        State s = (State) state;
+        name = s.name;
+        start = new Point(s.start);
+        end = new Point(s.end);
+        updatePivot();
+        setBounds();
+    }
+
+    private static class State implements ElementState {
+
+        private final String name;
+        private final Point start;
+        private final Point end;
+
+        State(Action a) {
+            name = a.name;
+            start = new Point(a.start);
+            end = new Point(a.end);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof State)) return false;
+            State other = (State) o;
+            return Objects.equals(name, other.name) && start.equals(other.start) && end.equals(other.end);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, start, end);
+        }
+
+        @Override
+        public long footprint() {
+            return OBJECT_SIZE + 3 * REFERENCE_SIZE + 2 * POINT_SIZE + ElementState.footprint(name);
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -124,4 +225,12 @@ public class Action extends Element {
     public Point getStart() {
         return start;
     }
+
+    public Point getEnd() {
+        return end;
+    }
+
+    public Edge getParent() {
+        return parent;
+    }
 }
@@ -0,0 +1,57 @@
+package org.daniel.microflow.model;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replaces files so that a crash leaves either the old contents or the new ones, never a mix of both: the new contents
+ * are written to a temporary file next to the target, flushed to the disk and only then renamed over it.
+ */
+final class AtomicFile {
+
+    private AtomicFile() { }
+
+    /**
+     * Name for the temporary file of {@code target}, in the same folder so that it can be renamed over it.
+     */
+    static Path temporary(Path target) {
+        Path file = target.toAbsolutePath();
+        return file.resolveSibling("." + file.getFileName() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+    }
+
+    /**
+     * Renames the temporary file, already flushed to the disk, over the target.
+     */
+    static void commit(Path temporary, Path target) throws IOException {
+        try {
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncFolder(target.toAbsolutePath().getParent());
+    }
+
+    static void discard(Path temporary) {
+        try {
+            Files.deleteIfExists(temporary);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Makes the rename itself survive a crash. Folders can't be opened on every platform, in which case it is left to
+     * the system.
+     */
+    private static void syncFolder(Path folder) {
+        if (folder == null) return;
+        try (FileChannel channel = FileChannel.open(folder, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) { }
+    }
+}
@@ -0,0 +1,322 @@
+package org.daniel.microflow.model;
+
+import java.awt.*;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary .mcf files. After a header with the number of entries of each section come:
+ * <ul>
+ *     <li>the string table: every distinct name and list of functions, as a length and UTF-8 bytes</li>
+ *     <li>the coordinates of every point, all the x and then all the y</li>
+ *     <li>fixed size records for nodes, edges and actions, referring to strings and points by index, to nodes and
+ *     edges by record number</li>
+ * </ul>
+ * Only what the user chose is stored, as in the JSON format. Types are stored by ordinal, so new ones have to be added
+ * at the end of their enum.
+ */
+class BinaryFormat {
+
+    private static final byte[] MAGIC = {(byte) 0x89, 'M', 'C', 'F'};
+    private static final short VERSION = 1;
+    private static final int NONE = -1;
+
+    private static final int HOLD_NAME = 1;
+    private static final int REVERSED = 1 << 1;
+    private static final int BIDIRECTIONAL = 1 << 2;
+
+    private static final NodeType[] NODE_TYPES = NodeType.values();
+    private static final EdgeType[] EDGE_TYPES = EdgeType.values();
+
+    static boolean isBinary(Path path) throws IOException {
+        byte[] header = new byte[MAGIC.length];
+        try (InputStream in = Files.newInputStream(path)) {
+            int read = 0;
+            while (read < header.length) {
+                int n = in.read(header, read, header.length - read);
+                if (n < 0) return false;
+                read += n;
+            }
+        }
+        return Arrays.equals(header, MAGIC);
+    }
+
+    /**
+     * Writes the graph and flushes it to the disk before returning.
+     */
+    static void write(Graph g, Path path, ProgressListener progress) throws IOException {
+        Tables t = new Tables();
+        for (Node n : g.getNodes()) {
+            t.string(n.getName());
+            t.point(n.getCenter());
+        }
+        for (Edge e : g.getEdges()) {
+            t.string(e.getName());
+            t.string(e.getFunctions());
+            t.point(e.getLocation());
+            if (hasNamePoint(e)) t.point(e.getNamePoint());
+        }
+        for (Action a : g.getActions()) {
+            t.string(a.getName());
+            t.point(a.getStart());
+            t.point(a.getEnd());
+        }
+
+        Map<Element, Integer> records = new IdentityHashMap<>();
+        long total = g.getNodes().size() + g.getEdges().size() + g.getActions().size();
+        try (FileOutputStream file = new FileOutputStream(path.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.write(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(0);
+            out.writeInt(t.strings.size());
+            out.writeInt(t.xs.size());
+            out.writeInt(g.getNodes().size());
+            out.writeInt(g.getEdges().size());
+            out.writeInt(g.getActions().size());
+
+            for (String s : t.strings) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            for (int i = 0; i < t.xs.size(); i++) out.writeInt(t.xs.get(i));
+            for (int i = 0; i < t.ys.size(); i++) out.writeInt(t.ys.get(i));
+
+            for (Node n : g.getNodes()) {
+                records.put(n, records.size());
+                out.writeInt(n.getId());
+                out.writeByte(n.getType().ordinal());
+                out.writeByte(n.nameHold() ? HOLD_NAME : 0);
+                out.writeInt(t.string(n.getName()));
+                out.writeInt(t.point(n.getCenter()));
+                progress.progress(records.size(), total);
+            }
+            int edge = 0;
+            for (Edge e : g.getEdges()) {
+                out.writeInt(e.getId());
+                out.writeByte(e.getType().ordinal());
+                out.writeByte((e.nameHold() ? HOLD_NAME : 0) | (e.isReversed() ? REVERSED : 0)
+                        | (e.isBidirectional() ? BIDIRECTIONAL : 0));
+                out.writeInt(t.string(e.getName()));
+                out.writeInt(records.get(e.getN1()));
+                out.writeInt(records.get(e.getN2()));
+                out.writeInt(t.point(e.getLocation()));
+                out.writeInt(hasNamePoint(e) ? t.point(e.getNamePoint()) : NONE);
+                out.writeInt(t.string(e.getFunctions()));
+                if (e.getAction() != null) records.put(e.getAction(), edge);
+                edge++;
+                progress.progress(g.getNodes().size() + edge, total);
+            }
+            int action = 0;
+            for (Action a : g.getActions()) {
+                Integer parent = records.get(a);
+                if (parent == null) throw new IOException("Action without an edge");
+                out.writeInt(a.getId());
+                out.writeByte(a.nameHold() ? HOLD_NAME : 0);
+                out.writeInt(parent);
+                out.writeInt(t.string(a.getName()));
+                out.writeInt(t.point(a.getStart()));
+                out.writeInt(t.point(a.getEnd()));
+                progress.progress(g.getNodes().size() + g.getEdges().size() + ++action, total);
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+    }
+
+    /**
+     * Returns a new graph with the elements read. The counters are not read, they are up to the caller.
+     */
+    static Graph read(Path path, ProgressListener progress) throws IOException {
+        // Read rather than mapped: a mapped file stays open until the buffer is collected, and on Windows it could
+        // then not be replaced when saved again
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("File too large");
+            buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) break;
+            }
+            buffer.flip();
+        }
+        try {
+            return read(buffer, progress);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Truncated or corrupt file", e);
+        }
+    }
+
+    private static Graph read(ByteBuffer in, ProgressListener progress) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not a binary Microflow file");
+        short version = in.getShort();
+        if (version > VERSION) throw new IOException("File saved by a newer version (format " + version + ")");
+        in.getShort();
+
+        int stringCount = count(in), pointCount = count(in);
+        int nodeCount = count(in), edgeCount = count(in), actionCount = count(in);
+
+        String[] strings = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            int length = count(in);
+            strings[i] = new String(bytes(in, length), StandardCharsets.UTF_8);
+        }
+
+        int[] xs = new int[pointCount], ys = new int[pointCount];
+        IntBuffer coordinates = in.asIntBuffer();
+        coordinates.get(xs);
+        coordinates.get(ys);
+        in.position(in.position() + 2 * pointCount * Integer.BYTES);
+
+        long total = (long) nodeCount + edgeCount + actionCount;
+        Graph g = new Graph();
+        Node[] nodes = new Node[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            int id = in.getInt();
+            NodeType type = NODE_TYPES[in.get()];
+            int flags = in.get();
+            String name = strings[in.getInt()];
+            Node n = new Node(type, name, point(xs, ys, in.getInt()), g);
+            n.setId(id);
+            n.holdName((flags & HOLD_NAME) != 0);
+            g.addNode(n);
+            nodes[i] = n;
+            progress.progress(i + 1, total);
+        }
+
+        Edge[] edges = new Edge[edgeCount];
+        for (int i = 0; i < edgeCount; i++) {
+            int id = in.getInt();
+            EdgeType type = EDGE_TYPES[in.get()];
+            int flags = in.get();
+            String name = string(strings, in.getInt());
+            Node n1 = nodes[in.getInt()], n2 = nodes[in.getInt()];
+            Point pivotPoint = point(xs, ys, in.getInt());
+            int namePoint = in.getInt();
+            String functions = string(strings, in.getInt());
+            boolean reversed = (flags & REVERSED) != 0;
+
+            Edge e = new Edge(type, name, n1, n2, reversed ? n2 : n1, reversed ? n1 : n2, pivotPoint,
+                    namePoint == NONE ? null : point(xs, ys, namePoint), (flags & BIDIRECTIONAL) != 0,
+                    functions == null ? "" : functions, g);
+            e.setId(id);
+            e.holdName((flags & HOLD_NAME) != 0);
+            g.addEdge(e);
+            edges[i] = e;
+            progress.progress(nodeCount + i + 1, total);
+        }
+
+        for (int i = 0; i < actionCount; i++) {
+            int id = in.getInt();
+            int flags = in.get();
+            Edge parent = edges[in.getInt()];
+            String name = strings[in.getInt()];
+            Point start = point(xs, ys, in.getInt());
+            Action a = new Action(name, start, point(xs, ys, in.getInt()));
+            a.setId(id);
+            a.holdName((flags & HOLD_NAME) != 0);
+            a.setParent(parent);
+            parent.setAction(a);
+            g.addAction(a);
+            progress.progress(nodeCount + edgeCount + i + 1, total);
+        }
+        return g;
+    }
+
+    private static boolean hasNamePoint(Edge e) {
+        return !e.getType().equals(EdgeType.OPERATION) && e.getNamePoint() != null;
+    }
+
+    private static int count(ByteBuffer in) throws IOException {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining()) throw new IOException("Corrupt file");
+        return count;
+    }
+
+    private static byte[] bytes(ByteBuffer in, int length) {
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return bytes;
+    }
+
+    private static String string(String[] strings, int index) {
+        return index == NONE ? null : strings[index];
+    }
+
+    private static Point point(int[] xs, int[] ys, int index) {
+        return new Point(xs[index], ys[index]);
+    }
+
+    /**
+     * Strings and points of the graph, each distinct value stored once.
+     */
+    private static class Tables {
+
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> stringIndex = new HashMap<>();
+        private final IntList xs = new IntList();
+        private final IntList ys = new IntList();
+        private final Map<Point, Integer> pointIndex = new HashMap<>();
+
+        int string(String s) {
+            if (s == null) return NONE;
+            Integer i = stringIndex.get(s);
+            if (i == null) {
+                i = strings.size();
+                strings.add(s);
+                stringIndex.put(s, i);
+            }
+            return i;
+        }
+
+        int point(Point p) {
+            Integer i = pointIndex.get(p);
+            if (i == null) {
+                i = xs.size();
+                xs.add(p.x);
+                ys.add(p.y);
+                pointIndex.put(new Point(p), i);
+            }
+            return i;
+        }
+    }
+
+    private static class IntList {
+
+        private int[] values = new int[64];
+        private int size;
+
+        void add(int v) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+
+        int get(int i) {
+            return values[i];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
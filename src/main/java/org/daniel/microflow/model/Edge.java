@@ -2,9 +2,9 @@ package org.daniel.microflow.model;
 
 import java.awt.*;
 import java.awt.geom.Ellipse2D;
-import java.awt.geom.Point2D;
 import java.awt.geom.QuadCurve2D;
-import java.awt.geom.Rectangle2D;
+import java.util.Map;
+import java.util.Objects;
 
 public class Edge extends Element {
 
@@ -29,11 +29,31 @@ public class Edge extends Element {
 
     private Point namePoint;
     private Rectangle nameBounds;
+    private transient Point nameOrigin;
+
+    /*
+     * Geometry derived from the centers of the nodes and the pivot: the curve, the loop circle, the arrows and their
+     * extent. It is rebuilt by setBounds() only when one of them changed since the last time, which is known from the
+     * version of the nodes and of the edge itself, so that the several calls a single drag makes rebuild it once.
+     */
+    private transient Rectangle curveExtent;
+    private transient int version;
+    private transient int builtVersion = -1;
+    private transient Node builtN1;
+    private transient Node builtN2;
+    private transient int builtN1Version;
+    private transient int builtN2Version;
+    private transient int geometry;
+    private transient int placed = -1;
 
     private static final int PIVOT_WIDTH = 15;
     private static final int PIVOT_HEIGHT = 15;
     private static final int H = 50;
     private static final int K = 50;
+    private static final int HIT_TOLERANCE = 15;
+    private static final int LINE_TOLERANCE = 10;
+    private static final int LINE_TOLERANCE_SQ = LINE_TOLERANCE * LINE_TOLERANCE;
+    private static final int LOOP_TOLERANCE = 15;
 
     public Edge(EdgeType type, String name, Node n1, Node n2, Graph graph) {
         super(name);
@@ -65,6 +85,58 @@ public class Edge extends Element {
         functions = "";
     }
 
+    /**
+     * Restores an edge read from a file. Unlike the other constructors the endpoints, pivot and name are kept exactly
+     * as they were saved.
+     */
+    public Edge(EdgeType type, String name, Node n1, Node n2, Node originalN1, Node originalN2, Point pivotPoint,
+                Point namePoint, boolean bidir, String functions, Graph graph) {
+        super(name);
+        this.graph = graph;
+        this.type = type;
+        this.n1 = n1;
+        this.n2 = n2;
+        this.originalN1 = originalN1;
+        this.originalN2 = originalN2;
+        this.bidir = bidir;
+        this.functions = functions;
+        this.namePoint = namePoint;
+        setPivotPoint(pivotPoint);
+        setBounds();
+        nameBounds = new Rectangle();
+        updateNameBounds();
+    }
+
+    /**
+     * Copies another edge, with its nodes replaced by their copies. The action is not copied.
+     */
+    Edge(Edge other, Map<Node, Node> nodes, Graph graph) {
+        super(other);
+        this.graph = graph;
+        type = other.type;
+        n1 = nodes.get(other.n1);
+        n2 = nodes.get(other.n2);
+        originalN1 = nodes.get(other.originalN1);
+        originalN2 = nodes.get(other.originalN2);
+        functions = other.functions;
+        pivotPoint = new Point(other.pivotPoint);
+        pivot = new Rectangle(other.pivot);
+        curve = (QuadCurve2D.Float) other.curve.clone();
+        curveToSame = other.curveToSame == null ? null : (Ellipse2D.Float) other.curveToSame.clone();
+        curveExtent = new Rectangle(other.curveExtent);
+        centerPointSame = other.centerPointSame == null ? null : new Point(other.centerPointSame);
+        bidir = other.bidir;
+        arrow = copy(other.arrow);
+        arrowBidir = copy(other.arrowBidir);
+        namePoint = other.namePoint == null ? null : new Point(other.namePoint);
+        nameBounds = other.nameBounds == null ? null : new Rectangle(other.nameBounds);
+        nameOrigin = other.nameOrigin == null ? null : new Point(other.nameOrigin);
+    }
+
+    private static Polygon copy(Polygon p) {
+        return p == null ? null : new Polygon(p.xpoints, p.ypoints, p.npoints);
+    }
+
     private void setDefaultPivot(Point p1, Point p2) {
         if (p1.equals(p2)) {
             pivotPoint = new Point(p1.x - 40, p2.y - 40);
@@ -95,8 +167,24 @@ public class Edge extends Element {
         return n2;
     }
 
+    /**
+     * True if the edge was turned around since it was created, as read/write operations are.
+     */
+    public boolean isReversed() {
+        return originalN1 != n1;
+    }
+
+    public boolean isBidirectional() {
+        return bidir;
+    }
+
+    /**
+     * Brings the geometry up to date with the nodes and, if it changed, moves the name and the action along.
+     */
     public void update() {
         setBounds();
+        if (placed == geometry) return;
+        placed = geometry;
         if (!type.equals(EdgeType.TRANSITION))
             setNamePoint(bezierQuadratic(0.5, n1.getCenter(), pivotPoint, n2.getCenter()));
         if (action != null) action.update();
@@ -104,6 +192,10 @@ public class Edge extends Element {
 
     @Override
     protected void setBounds() {
+        if (builtVersion == version && builtN1 == n1 && builtN2 == n2 && builtN1Version == n1.getVersion()
+                && builtN2Version == n2.getVersion()) {
+            return;
+        }
         Point p0 = n1.getCenter();
         Point p2 = n2.getCenter();
         curve = new QuadCurve2D.Float(p0.x, p0.y, pivotPoint.x, pivotPoint.y, p2.x, p2.y);
@@ -117,17 +209,26 @@ public class Edge extends Element {
 
         arrow = makeArrow(p0, pivotPoint, p2, n2);
         if (bidir) arrowBidir = makeArrow(p2, pivotPoint, p0, n1);
-    }
 
-    private Point findIntersection(Point p0, Node dest) {
-        for (double t = 0; t <= 1; t += 0.005) {
-            Point p = bezierLinear(t, p0, dest.getCenter());
+        curveExtent = curve.getBounds();
+        if (n1 == n2 && curveToSame != null) curveExtent.add(curveToSame.getBounds());
 
-            if (dest.circleContains(p))
-                return p;
-        }
+        builtVersion = version;
+        builtN1 = n1;
+        builtN2 = n2;
+        builtN1Version = n1.getVersion();
+        builtN2Version = n2.getVersion();
+        geometry++;
+    }
 
-        return new Point();
+    /**
+     * Point where the line from {@code p0} to the center of {@code dest} enters its circle.
+     */
+    private Point findIntersection(Point p0, Node dest) {
+        Point c = dest.getCenter();
+        double t = Geometry.exitCircle(p0.x, p0.y, (p0.x + c.x) / 2.0, (p0.y + c.y) / 2.0, c.x, c.y,
+                c.x, c.y, dest.getRadius());
+        return t < 0 ? p0 : bezierLinear(t, p0, c);
     }
 
     private Polygon makeArrow(Point p0, Point p1, Point p2, Node dest) {
@@ -139,16 +240,25 @@ public class Edge extends Element {
             Point origin = closestIntersection(centerPointSame, H / 2, pivotPoint, n1.center);
             return getArrowFor(rotatePoint(destination, 40 * Math.PI/180, origin), destination);
         } else {
-
-            for (double t = 1; t >= 0; t -= 0.005) {
-                Point actual = type.equals(EdgeType.OPERATION) ? bezierLinear(t, p1, p2) : bezierQuadratic(t, p0, p1, p2);
-                //si el nodo destino es un TAD o un STATE, mirar su circulo, no su bound entero
-                if ((destType.equals(NodeType.TAD) || destType.equals(NodeType.STATE)) ?
-                        !dest.circleContains(actual) :
-                        !dest.contains(actual)) {
-                    Point next = type.equals(EdgeType.OPERATION) ? pivotPoint : bezierQuadratic(t - 0.05, p0, p1, p2);
-                    return getArrowFor(next, actual);
-                }
+            // Operations are a straight line from the pivot, which is a curve with its control point in the middle
+            boolean operation = type.equals(EdgeType.OPERATION);
+            Point start = operation ? p1 : p0;
+            double controlX = operation ? (p1.x + p2.x) / 2.0 : p1.x;
+            double controlY = operation ? (p1.y + p2.y) / 2.0 : p1.y;
+            double t;
+            //si el nodo destino es un TAD o un STATE, mirar su circulo, no su bound entero
+            if (destType.equals(NodeType.TAD) || destType.equals(NodeType.STATE)) {
+                t = Geometry.exitCircle(start.x, start.y, controlX, controlY, p2.x, p2.y,
+                        dest.center.x, dest.center.y, dest.getRadius());
+            } else {
+                Rectangle b = dest.bounds;
+                t = Geometry.exitBox(start.x, start.y, controlX, controlY, p2.x, p2.y,
+                        b.getCenterX(), b.getCenterY(), b.width / 2.0, b.height / 2.0);
+            }
+            if (t >= 0) {
+                Point actual = operation ? bezierLinear(t, p1, p2) : bezierQuadratic(t, p0, p1, p2);
+                Point next = operation ? pivotPoint : bezierQuadratic(t - 0.05, p0, p1, p2);
+                return getArrowFor(next, actual);
             }
         }
         return new Polygon(); //no se puede encontrar el punto, nunca se da este caso
@@ -274,20 +384,36 @@ public class Edge extends Element {
     public void updatePivot(Point p) {
         if (n1.circleContains(p) || n2.circleContains(p)) return;
 
+        setPivotPoint(p);
+        update();
+    }
+
+    private void setPivotPoint(Point p) {
+        version++;
         pivotPoint = p;
         pivot = new Rectangle(p.x - PIVOT_WIDTH / 2, p.y - PIVOT_HEIGHT / 2,
                 PIVOT_WIDTH, PIVOT_HEIGHT);
-        setBounds();
-        update();
     }
 
     @Override
     public void draw(Graphics2D g) {
-        g.setStroke(type.getStroke());
+        setStroke(g, type.getStroke());
         g.setColor(isSelected() ? Color.GRAY : type.getColor());
         Point p1 = n1.getCenter();
         Point p2 = n2.getCenter();
 
+        if (isOverview(g)) {
+            // Only the line, thin and without name, arrows or action
+            g.setStroke(STROKE_SMALL);
+            if (type.equals(EdgeType.OPERATION)) {
+                g.drawLine(p1.x, p1.y, pivotPoint.x, pivotPoint.y);
+                g.drawLine(pivotPoint.x, pivotPoint.y, p2.x, p2.y);
+            } else {
+                g.draw(p1.equals(p2) ? curveToSame : curve);
+            }
+            return;
+        }
+
         if (type.equals(EdgeType.OPERATION)) {
             g.drawLine(p1.x, p1.y, pivotPoint.x, pivotPoint.y);
             g.drawLine(pivotPoint.x, pivotPoint.y, p2.x, p2.y);
@@ -300,14 +426,15 @@ public class Edge extends Element {
             }
             if (type.equals(EdgeType.TRANSITION) || type.equals(EdgeType.INTERRUPT)) {
                 g.setColor(selected ? Color.GRAY : Color.BLACK);
-                Font f = type.equals(EdgeType.TRANSITION) ? FONT_MED : FONT_LARGE;
-                drawCenteredText(g, namePoint.x, namePoint.y, name, f, this);
+                g.setFont(getNameFont());
+                g.drawString(name, nameOrigin.x, nameOrigin.y);
             } else if (type.equals(EdgeType.INTERFACE)) {
                 g.setColor(Color.WHITE);
                 g.fillOval(nameBounds.x, nameBounds.y, nameBounds.width, nameBounds.height);
                 g.setColor(selected ? Color.GRAY : Color.BLACK);
                 g.drawOval(nameBounds.x, nameBounds.y, nameBounds.width, nameBounds.height);
-                drawCenteredText(g, namePoint.x, namePoint.y, name, FONT_LARGE, this);
+                g.setFont(getNameFont());
+                g.drawString(name, nameOrigin.x, nameOrigin.y);
             }
         }
 
@@ -327,30 +454,57 @@ public class Edge extends Element {
 
     public void setBidirectional(boolean bidir) {
         this.bidir = bidir;
+        version++;
         setBounds();
     }
 
     @Override
     public void setName(String name) {
-        if (type.equals(EdgeType.INTERRUPT) || type.equals(EdgeType.INTERFACE) || type.equals(EdgeType.TRANSITION)) {
-            if (namePoint == null) {
-                namePoint = bezierQuadratic(0.5, n1.getCenter(), pivotPoint, n2.getCenter());
-            }
-            if (type.equals(EdgeType.INTERFACE)) {
-                nameBounds = new Rectangle(namePoint.x - 20, namePoint.y - 20, 40, 40);
-            }
-        }
         for (Edge e : graph.getEdges()) {
             if (e != this && e.getType().equals(EdgeType.INTERFACE) && e.getName().equals(name)) {
                 functions = e.functions;
             }
         }
         this.name = name;
+        updateNameBounds();
+    }
+
+    /**
+     * Lays out the name around its point: where its text is drawn and the area that is hit when clicking on it, which
+     * is the text itself or, for interfaces, the circle around it. Done whenever the name or its point change, so that
+     * it doesn't depend on the edge having been painted.
+     */
+    private void updateNameBounds() {
+        if (type.equals(EdgeType.INTERRUPT) || type.equals(EdgeType.INTERFACE) || type.equals(EdgeType.TRANSITION)) {
+            if (namePoint == null) {
+                namePoint = bezierQuadratic(0.5, n1.getCenter(), pivotPoint, n2.getCenter());
+            }
+            // https://stackoverflow.com/questions/21267412/drawing-strings-inscribed-in-a-circle
+            TextMetrics.Text text = TextMetrics.of(getNameFont(), name);
+            int textWidth = (int) text.bounds.getWidth();
+            int textHeight = (int) text.bounds.getHeight();
+            int cornerX = namePoint.x - textWidth / 2;
+            int top = namePoint.y - textHeight / 2;
+            nameOrigin = new Point(cornerX, top + text.ascent);
+
+            Rectangle newBounds = type.equals(EdgeType.INTERFACE)
+                    ? new Rectangle(namePoint.x - 20, namePoint.y - 20, 40, 40)
+                    : new Rectangle(cornerX, top, textWidth, textHeight);
+            if (!newBounds.equals(nameBounds)) {
+                nameBounds = newBounds;
+                if (graph != null) graph.elementChanged(this);
+            }
+        }
+    }
+
+    private Font getNameFont() {
+        if (name.length() >= 20) return FONT_MED; //bueeeno...
+        return type.equals(EdgeType.TRANSITION) ? FONT_MED : FONT_LARGE;
     }
 
     public void setNamePoint(Point p) {
         namePoint = p;
-        setName(name);
+        updateNameBounds();
     }
 
     public boolean nameBoundsContains(Point p) {
@@ -362,43 +516,32 @@ public class Edge extends Element {
         return pivotPoint;
     }
 
+    @Override
+    public Rectangle getExtent() {
+        Rectangle extent = new Rectangle(curveExtent);
+        if (nameBounds != null && !nameBounds.isEmpty()) extent.add(nameBounds);
+        extent.grow(HIT_TOLERANCE, HIT_TOLERANCE);
+        return extent;
+    }
+
+    /**
+     * True if {@code p} is on the name, within {@link #LINE_TOLERANCE} of the line or, for an edge from a node to
+     * itself, inside its circle or within {@link #LOOP_TOLERANCE} of it.
+     */
     @Override
     public boolean contains(Point p) {
         if (nameBoundsContains(p)) return true;
-        for (double t = 0; t <= 1; t += 0.005) {
-            if (type.equals(EdgeType.OPERATION)) {
-                Point cur = bezierLinear(t, n1.getCenter(), pivotPoint);
-                Point cur2 = bezierLinear(t, pivotPoint, n2.getCenter());
-                if (Math.hypot(p.x - cur.x, p.y - cur.y) <= 10 || Math.hypot(p.x - cur2.x, p.y - cur2.y) <= 10) {
-                    return true;
-                }
-            } else {
-                Point cur = bezierQuadratic(t, n1.getCenter(), pivotPoint, n2.getCenter());
-                if (Math.hypot(p.x - cur.x, p.y - cur.y) <= 10) {
-                    return true;
-                }
-
-                if (n1 == n2) {
-                    if (curveToSame.contains(p) || distanceToCircle(p, centerPointSame)) return true;
-                }
-
-            }
+        Point p0 = n1.getCenter();
+        Point p2 = n2.getCenter();
+        if (type.equals(EdgeType.OPERATION)) {
+            return Geometry.segmentDistanceSq(p.x, p.y, p0.x, p0.y, pivotPoint.x, pivotPoint.y) <= LINE_TOLERANCE_SQ
+                    || Geometry.segmentDistanceSq(p.x, p.y, pivotPoint.x, pivotPoint.y, p2.x, p2.y) <= LINE_TOLERANCE_SQ;
         }
-        return false;
-    }
-
-    private boolean distanceToCircle(Point origin, Point circleCenter) {
-        for (int i = 0; i < H; i++) {
-            Point2D.Double pos = pointOfEllipsePositive(i, circleCenter.x, circleCenter.y, H / 2);
-            Point2D.Double neg = pointOfEllipseNegative(i, circleCenter.x, circleCenter.y, H / 2);
-
-            if (distanceTo(pos, origin) <= 15 || distanceTo(neg, origin) <= 15) {
-                System.out.println();
-                return true;
-            }
+        if (Geometry.quadDistanceSq(p.x, p.y, p0.x, p0.y, pivotPoint.x, pivotPoint.y, p2.x, p2.y)
+                <= LINE_TOLERANCE_SQ) {
+            return true;
         }
-
-        return false;
+        return n1 == n2 && p.distance(centerPointSame) <= H / 2 + LOOP_TOLERANCE;
     }
 
     public void setAsRead() {
@@ -418,6 +561,7 @@ public class Edge extends Element {
         n2 = n1;
         n1 = temp;
         setBounds();
+        graph.endpointsChanged(this, n2, n1);
     }
 
     public void setN1(Node n1) {
@@ -428,28 +572,6 @@ public class Edge extends Element {
         this.n2 = n2;
     }
 
-    /**
-     * https://stackoverflow.com/questions/21267412/drawing-strings-inscribed-in-a-circle
-     */
-    protected void drawCenteredText(Graphics2D g, int x, int y, String text, Font f, Object caller) {
-        g.setFont(text.length() >= 20 ? FONT_MED : f); //bueeeno...
-        FontMetrics fm = g.getFontMetrics();
-        Rectangle2D rect = fm.getStringBounds(text, g);
-
-        int textHeight = (int) (rect.getHeight());
-        int textWidth = (int) (rect.getWidth());
-
-        int cornerX = x - (textWidth / 2);
-        int cornerY = y - (textHeight / 2) + fm.getAscent();
-
-        //la porquería más grande, pero es lo más sencillo
-        if (caller == this && !type.equals(EdgeType.INTERFACE)) {
-            nameBounds = new Rectangle(cornerX, y - textHeight / 2, textWidth, textHeight);
-        }
-
-        g.drawString(text, cornerX, cornerY);
-    }
-
     public Point getNamePoint() {
         return namePoint;
     }
@@ -460,44 +582,26 @@ public class Edge extends Element {
 
     public void setAction(Action action) {
         this.action = action;
+        placed = -1;
     }
 
     //únicamente para las transiciones y usado por las acciones
     public Point getNearestTo(Point p) {
-        double min = Double.MAX_VALUE;
-        Point actual;
         if (n1 != n2) {
-            Point nearest = new Point(0, 0);
-            for (double t = 0; t <= 1; t += 0.005) {
-                actual = bezierQuadratic(t, n1.getCenter(), pivotPoint, n2.getCenter());
-                double d = Math.hypot(p.x - actual.x, p.y - actual.y);
-                if (d < min) {
-                    min = d;
-                    nearest = actual;
-                }
-            }
-            return nearest;
+            Point p0 = n1.getCenter();
+            Point p2 = n2.getCenter();
+            double t = Geometry.quadClosest(p.x, p.y, p0.x, p0.y, pivotPoint.x, pivotPoint.y, p2.x, p2.y);
+            return bezierQuadratic(t, p0, pivotPoint, p2);
         } else {
-            Point2D.Double nearest = new Point2D.Double(0, 0);
-            for (double i = 0; i < H; i += 0.005) {
-                //if (p.y >= centerPointSame.y) {
-                    Point2D.Double pos = pointOfEllipsePositive(i, centerPointSame.x, centerPointSame.y, H/2);
-                    double dPos = Math.hypot(p.x - pos.x, p.y - pos.y);
-                    if (dPos < min) {
-                        min = dPos;
-                        nearest = pos;
-                    }
-                //} else {
-                    Point2D.Double neg = pointOfEllipseNegative(i, centerPointSame.x, centerPointSame.y, H / 2);
-                    double dNeg = Math.hypot(p.x - neg.x, p.y - neg.y);
-
-                    if (dNeg < min) {
-                        min = dNeg;
-                        nearest = neg;
-                    }
-                //}
+            // Projection on the circle; its leftmost point if p is right at the center
+            double dx = p.x - centerPointSame.x, dy = p.y - centerPointSame.y;
+            double d = Math.hypot(dx, dy);
+            if (d == 0) {
+                dx = -1;
+                d = 1;
             }
-            return new Point((int) nearest.x, (int) nearest.y);
+            double r = H / 2;
+            return new Point((int) (centerPointSame.x + dx * r / d), (int) (centerPointSame.y + dy * r / d));
         }
     }
 
@@ -506,15 +610,91 @@ public class Edge extends Element {
     }
 
     public void setFunctions(String functions) {
+        graph.record(this);
         this.functions = functions;
         for (Edge e : graph.getEdges()) {
             if (e != this && e.getType().equals(EdgeType.INTERFACE) && e.getName().equals(name)) {
+                graph.record(e);
                 e.functions = functions;
             }
         }
     }
 
+    @Override
+    ElementState saveState() {
+        return new State(this);
+    }
+
+    @Override
+    void restoreState(ElementState state) {
+        State s = (State) state;
+        Node oldN1 = n1, oldN2 = n2;
+        name = s.name;
+        holdName(s.holdName);
+        n1 = s.n1;
+        n2 = s.n2;
+        bidir = s.bidir;
+        version++;
+        functions = s.functions;
+        action = s.action;
+        setPivotPoint(new Point(s.pivotPoint));
+        namePoint = s.namePoint == null ? null : new Point(s.namePoint);
+        setBounds();
+        updateNameBounds();
+        if (oldN1 != n1 || oldN2 != n2) graph.endpointsChanged(this, oldN1, oldN2);
+    }
+
+    private static class State implements ElementState {
+
+        private final String name;
+        private final boolean holdName;
+        private final Node n1;
+        private final Node n2;
+        private final boolean bidir;
+        private final String functions;
+        private final Action action;
+        private final Point pivotPoint;
+        private final Point namePoint;
+
+        State(Edge e) {
+            name = e.name;
+            holdName = e.nameHold();
+            n1 = e.n1;
+            n2 = e.n2;
+            bidir = e.bidir;
+            functions = e.functions;
+            action = e.action;
+            pivotPoint = new Point(e.pivotPoint);
+            namePoint = e.namePoint == null ? null : new Point(e.namePoint);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof State)) return false;
+            State other = (State) o;
+            return holdName == other.holdName && bidir == other.bidir && n1 == other.n1 && n2 == other.n2
+                    && action == other.action && Objects.equals(name, other.name)
+                    && Objects.equals(functions, other.functions) && pivotPoint.equals(other.pivotPoint)
+                    && Objects.equals(namePoint, other.namePoint);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, pivotPoint, namePoint);
+        }
+
+        @Override
+        public long footprint() {
+            return OBJECT_SIZE + 8 * REFERENCE_SIZE + 2 * POINT_SIZE
+                    + ElementState.footprint(name) + ElementState.footprint(functions);
+        }
+    }
+
     public void setGraph(Graph graph) {
         this.graph = graph;
     }
+
+    Graph getGraph() {
+        return graph;
+    }
 }
@@ -0,0 +1,176 @@
+package org.daniel.microflow.model;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A reversible change to a {@link Graph}: the elements that were added or removed plus the state before and after of
+ * every element that was modified. Undoing or redoing it only touches those elements.
+ */
+class Edit {
+
+    private static final int EDIT_SIZE = 128;
+    private static final int CHANGE_SIZE = 48;
+    private static final int ELEMENT_SIZE = 256;
+
+    private static final AtomicLong nextSequence = new AtomicLong();
+
+    private final long sequence;
+    private final List<Element> structure;
+    private final List<Boolean> added;
+    private final Map<Element, Change> changes;
+    private final List<Change> nodeChanges;
+    private final List<Change> edgeChanges;
+    private final List<Change> actionChanges;
+    private final int stateCountBefore;
+    private final int interfaceCountBefore;
+    private int stateCountAfter;
+    private int interfaceCountAfter;
+    private long footprint;
+
+    Edit(int stateCount, int interfaceCount) {
+        sequence = nextSequence.getAndIncrement();
+        structure = new ArrayList<>();
+        added = new ArrayList<>();
+        changes = new IdentityHashMap<>();
+        nodeChanges = new ArrayList<>();
+        edgeChanges = new ArrayList<>();
+        actionChanges = new ArrayList<>();
+        stateCountBefore = stateCount;
+        interfaceCountBefore = interfaceCount;
+    }
+
+    void recordAdd(Element e) {
+        structure.add(e);
+        added.add(Boolean.TRUE);
+    }
+
+    void recordRemove(Element e) {
+        structure.add(e);
+        added.add(Boolean.FALSE);
+    }
+
+    void recordState(Element e) {
+        if (changes.containsKey(e)) return;
+        Change c = new Change(e, e.captureState());
+        changes.put(e, c);
+        if (e instanceof Node) {
+            nodeChanges.add(c);
+        } else if (e instanceof Edge) {
+            edgeChanges.add(c);
+        } else {
+            actionChanges.add(c);
+        }
+    }
+
+    /**
+     * Captures the final state of the recorded elements and drops the ones that did not change.
+     *
+     * @return false if the edit did not change anything and should be discarded
+     */
+    boolean close(int stateCount, int interfaceCount) {
+        stateCountAfter = stateCount;
+        interfaceCountAfter = interfaceCount;
+        for (Change c : changes.values()) {
+            c.after = c.element.captureState();
+        }
+        nodeChanges.removeIf(Change::isEmpty);
+        edgeChanges.removeIf(Change::isEmpty);
+        actionChanges.removeIf(Change::isEmpty);
+        changes.clear();
+
+        footprint = EDIT_SIZE;
+        for (Element e : structure) footprint += ELEMENT_SIZE + e.captureState().footprint();
+        for (Change c : nodeChanges) footprint += c.footprint();
+        for (Change c : edgeChanges) footprint += c.footprint();
+        for (Change c : actionChanges) footprint += c.footprint();
+
+        return !structure.isEmpty() || !nodeChanges.isEmpty() || !edgeChanges.isEmpty() || !actionChanges.isEmpty()
+                || stateCountBefore != stateCountAfter || interfaceCountBefore != interfaceCountAfter;
+    }
+
+    /**
+     * Estimated number of bytes kept alive by this edit. States shared with the neighbouring edits are counted in both.
+     */
+    long getFootprint() {
+        return footprint;
+    }
+
+    /**
+     * Global creation order of the edit, used to find the oldest history entry among all the open diagrams.
+     */
+    long getSequence() {
+        return sequence;
+    }
+
+    void undo(Graph g) {
+        for (int i = structure.size() - 1; i >= 0; i--) {
+            if (added.get(i)) {
+                g.removeElement(structure.get(i));
+            } else {
+                g.insertElement(structure.get(i));
+            }
+        }
+        restore(g, true);
+        g.setCounts(stateCountBefore, interfaceCountBefore);
+    }
+
+    void redo(Graph g) {
+        for (int i = 0; i < structure.size(); i++) {
+            if (added.get(i)) {
+                g.insertElement(structure.get(i));
+            } else {
+                g.removeElement(structure.get(i));
+            }
+        }
+        restore(g, false);
+        g.setCounts(stateCountAfter, interfaceCountAfter);
+    }
+
+    /**
+     * Nodes go first so that edges are rebuilt against their final position, and actions go last because updating an
+     * edge moves its action.
+     */
+    private void restore(Graph g, boolean before) {
+        for (Change c : nodeChanges) {
+            c.restore(before);
+            g.nodeRestored((Node) c.element);
+        }
+        for (Change c : edgeChanges) {
+            c.restore(before);
+        }
+        for (Change c : actionChanges) {
+            c.restore(before);
+        }
+        for (Change c : nodeChanges) g.elementChanged(c.element);
+        for (Change c : edgeChanges) g.elementChanged(c.element);
+        for (Change c : actionChanges) g.elementChanged(c.element);
+    }
+
+    private static class Change {
+
+        private final Element element;
+        private final ElementState before;
+        private ElementState after;
+
+        Change(Element element, ElementState before) {
+            this.element = element;
+            this.before = before;
+        }
+
+        boolean isEmpty() {
+            return before == after || before.equals(after);
+        }
+
+        long footprint() {
+            return CHANGE_SIZE + before.footprint() + after.footprint();
+        }
+
+        void restore(boolean toBefore) {
+            element.applyState(toBefore ? before : after);
+        }
+    }
+}
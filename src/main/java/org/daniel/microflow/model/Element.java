@@ -11,6 +11,9 @@ public abstract class Element implements Drawable {
     protected boolean selected;
     protected Rectangle bounds;
     private boolean holdName;
+    private int id;
+    private transient long order;
+    private transient ElementState lastState;
 
     protected static final Stroke STROKE_SMALL = new BasicStroke(1);
 
@@ -25,12 +28,55 @@ public abstract class Element implements Drawable {
         holdName = false;
     }
 
+    /**
+     * Copies another element, see {@link Graph#snapshot()}.
+     */
+    Element(Element other) {
+        name = other.name;
+        selected = other.selected;
+        bounds = new Rectangle(other.bounds);
+        holdName = other.holdName;
+        id = other.id;
+        order = other.order;
+    }
+
     protected abstract void setBounds();
 
+    /**
+     * Returns an immutable copy of the data needed to bring this element back to its current state. Derived geometry is
+     * not included, it is recomputed by {@link #restoreState(ElementState)}.
+     */
+    abstract ElementState saveState();
+
+    abstract void restoreState(ElementState state);
+
+    /**
+     * Same as {@link #saveState()}, but returns the previously captured state if nothing changed since, so that
+     * consecutive edits share it instead of keeping equal copies.
+     */
+    ElementState captureState() {
+        ElementState state = saveState();
+        if (state.equals(lastState)) return lastState;
+        lastState = state;
+        return state;
+    }
+
+    void applyState(ElementState state) {
+        restoreState(state);
+        lastState = state;
+    }
+
     public boolean contains(Point p) {
         return bounds.contains(p);
     }
 
+    /**
+     * Area outside of which {@link #contains(Point)} is guaranteed to be false. Used by the spatial index of the graph.
+     */
+    public Rectangle getExtent() {
+        return new Rectangle(bounds);
+    }
+
     public String getName() {
         return name;
     }
@@ -47,6 +93,22 @@ public abstract class Element implements Drawable {
         this.selected = selected;
     }
 
+    /**
+     * True if the element is to be drawn simplified, see {@link #KEY_OVERVIEW}.
+     */
+    protected static boolean isOverview(Graphics2D g) {
+        return Boolean.TRUE.equals(g.getRenderingHint(KEY_OVERVIEW));
+    }
+
+    /**
+     * Sets {@code stroke}, or a thin one while the diagram is moved around, see {@link #KEY_INTERACTIVE}. Dashed strokes
+     * are kept, the dashes tell the edges apart.
+     */
+    protected static void setStroke(Graphics2D g, Stroke stroke) {
+        boolean dashed = stroke instanceof BasicStroke && ((BasicStroke) stroke).getDashArray() != null;
+        g.setStroke(!dashed && Boolean.TRUE.equals(g.getRenderingHint(KEY_INTERACTIVE)) ? STROKE_SMALL : stroke);
+    }
+
     protected void drawOutline(Graphics2D g) {
         g.setStroke(STROKE_SMALL);
         g.setColor(Color.GRAY);
@@ -65,6 +127,26 @@ public abstract class Element implements Drawable {
         this.holdName = holdName;
     }
 
+    /**
+     * Identifier of the element within its graph, saved with it so that references survive a reload. Zero until the
+     * element is added to a graph.
+     */
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    long getOrder() {
+        return order;
+    }
+
+    void setOrder(long order) {
+        this.order = order;
+    }
+
     protected Point2D.Double pointOfEllipsePositive(double x, int h, int k, int r) {
         x -= r;
         return new Point2D.Double(x + h, Math.sqrt(Math.pow(r, 2) - Math.pow(x, 2)) + k);
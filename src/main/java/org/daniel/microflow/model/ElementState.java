@@ -0,0 +1,20 @@
+package org.daniel.microflow.model;
+
+/**
+ * Immutable copy of the editable data of an element, kept by the undo history.
+ */
+interface ElementState {
+
+    int OBJECT_SIZE = 16;
+    int REFERENCE_SIZE = 8;
+    int POINT_SIZE = 24;
+
+    /**
+     * Approximate number of bytes retained by this state, strings included.
+     */
+    long footprint();
+
+    static long footprint(String s) {
+        return s == null ? 0 : 40 + 2L * s.length();
+    }
+}
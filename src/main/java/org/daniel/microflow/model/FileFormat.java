@@ -0,0 +1,16 @@
+package org.daniel.microflow.model;
+
+/**
+ * Formats a {@link Graph} can be saved in. Both use the .mcf extension, the format of a file is detected when it is
+ * opened.
+ */
+public enum FileFormat {
+    /**
+     * Text format, for interchange with other tools.
+     */
+    JSON,
+    /**
+     * Smaller and faster to load, for large diagrams.
+     */
+    BINARY
+}
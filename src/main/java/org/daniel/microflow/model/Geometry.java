@@ -0,0 +1,188 @@
+package org.daniel.microflow.model;
+
+/**
+ * Closed-form geometry of the curves edges are made of: distances for hit testing and the points where they meet their
+ * nodes. Everything works on plain coordinates and allocates nothing, as it runs for every edge near the mouse on every
+ * click and for every edge of a node while it is dragged.
+ */
+final class Geometry {
+
+    private static final double EPSILON = 1e-9;
+
+    private Geometry() { }
+
+    /**
+     * Squared distance from (px, py) to the segment from (ax, ay) to (bx, by).
+     */
+    static double segmentDistanceSq(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax, dy = by - ay;
+        double length = dx * dx + dy * dy;
+        double t = length < EPSILON ? 0 : ((px - ax) * dx + (py - ay) * dy) / length;
+        t = Math.max(0, Math.min(1, t));
+        double x = ax + t * dx - px, y = ay + t * dy - py;
+        return x * x + y * y;
+    }
+
+    /**
+     * Squared distance from (px, py) to the quadratic Bézier curve with end points (x0, y0), (x2, y2) and control
+     * point (x1, y1).
+     */
+    static double quadDistanceSq(double px, double py, double x0, double y0, double x1, double y1,
+                                 double x2, double y2) {
+        double t = quadClosest(px, py, x0, y0, x1, y1, x2, y2);
+        return quadPointDistanceSq(t, px, py, x0, y0, x1 - x0, y1 - y0, x0 - 2 * x1 + x2, y0 - 2 * y1 + y2);
+    }
+
+    /**
+     * Parameter of the point of the quadratic Bézier curve closest to (px, py).
+     *
+     * With {@code B(t) = P0 + 2tV + t²A}, where {@code V = P1 - P0} and {@code A = P0 - 2P1 + P2}, the closest point
+     * is where {@code (B(t) - P)·B'(t) = 0}, a cubic in t. It is solved exactly and its roots within [0, 1] are
+     * compared with both ends of the curve.
+     */
+    static double quadClosest(double px, double py, double x0, double y0, double x1, double y1,
+                              double x2, double y2) {
+        double vx = x1 - x0, vy = y1 - y0;
+        double ax = x0 - 2 * x1 + x2, ay = y0 - 2 * y1 + y2;
+        double wx = x0 - px, wy = y0 - py;
+
+        double a = ax * ax + ay * ay;
+        double b = 3 * (ax * vx + ay * vy);
+        double c = 2 * (vx * vx + vy * vy) + ax * wx + ay * wy;
+        double d = vx * wx + vy * wy;
+
+        double best = quadPointDistanceSq(0, px, py, x0, y0, vx, vy, ax, ay)
+                <= quadPointDistanceSq(1, px, py, x0, y0, vx, vy, ax, ay) ? 0 : 1;
+
+        if (Math.abs(a) < EPSILON) {
+            // A straight curve: the cubic is at most quadratic
+            if (Math.abs(b) < EPSILON) {
+                if (Math.abs(c) > EPSILON) best = closer(best, -d / c, px, py, x0, y0, vx, vy, ax, ay);
+            } else {
+                double disc = c * c - 4 * b * d;
+                if (disc >= 0) {
+                    double root = Math.sqrt(disc);
+                    best = closer(best, (-c + root) / (2 * b), px, py, x0, y0, vx, vy, ax, ay);
+                    best = closer(best, (-c - root) / (2 * b), px, py, x0, y0, vx, vy, ax, ay);
+                }
+            }
+            return best;
+        }
+
+        // Depressed cubic s³ + ps + q = 0 with t = s - b / 3a
+        double bn = b / a, cn = c / a, dn = d / a;
+        double shift = -bn / 3;
+        double p = cn - bn * bn / 3;
+        double q = 2 * bn * bn * bn / 27 - bn * cn / 3 + dn;
+        double disc = q * q / 4 + p * p * p / 27;
+
+        if (disc > 0) {
+            double root = Math.sqrt(disc);
+            double t = Math.cbrt(-q / 2 + root) + Math.cbrt(-q / 2 - root) + shift;
+            best = closer(best, t, px, py, x0, y0, vx, vy, ax, ay);
+        } else if (Math.abs(p) < EPSILON) {
+            best = closer(best, shift, px, py, x0, y0, vx, vy, ax, ay);
+        } else {
+            double r = 2 * Math.sqrt(-p / 3);
+            double cos = Math.max(-1, Math.min(1, 3 * q / (p * r)));
+            double phi = Math.acos(cos) / 3;
+            for (int k = 0; k < 3; k++) {
+                double t = r * Math.cos(phi - 2 * Math.PI * k / 3) + shift;
+                best = closer(best, t, px, py, x0, y0, vx, vy, ax, ay);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns whichever of {@code best} and {@code t} is closer to (px, py), ignoring t outside of the curve.
+     */
+    private static double closer(double best, double t, double px, double py, double x0, double y0,
+                                 double vx, double vy, double ax, double ay) {
+        if (!(t > 0 && t < 1)) return best;
+        return quadPointDistanceSq(t, px, py, x0, y0, vx, vy, ax, ay)
+                < quadPointDistanceSq(best, px, py, x0, y0, vx, vy, ax, ay) ? t : best;
+    }
+
+    private static double quadPointDistanceSq(double t, double px, double py, double x0, double y0,
+                                              double vx, double vy, double ax, double ay) {
+        double x = x0 + 2 * t * vx + t * t * ax - px;
+        double y = y0 + 2 * t * vy + t * t * ay - py;
+        return x * x + y * y;
+    }
+
+    /**
+     * Parameter where the quadratic Bézier curve from (x0, y0) to (x2, y2), with control point (x1, y1), leaves a
+     * circle of radius r centred at (cx, cy), which is where an arrow pointing at a node drawn as that circle ends.
+     *
+     * @return the largest t whose point is on the circle, or -1 if the curve never leaves it
+     * @see #exitBox
+     */
+    static double exitCircle(double x0, double y0, double x1, double y1, double x2, double y2,
+                             double cx, double cy, double r) {
+        return exit(x0, y0, x1, y1, x2, y2, cx, cy, r, 0, true);
+    }
+
+    /**
+     * Same as {@link #exitCircle}, for a rectangle with the given half sizes centred at (cx, cy).
+     */
+    static double exitBox(double x0, double y0, double x1, double y1, double x2, double y2,
+                          double cx, double cy, double halfWidth, double halfHeight) {
+        return exit(x0, y0, x1, y1, x2, y2, cx, cy, halfWidth, halfHeight, false);
+    }
+
+    /**
+     * The shape is usually around the end of the curve, so the point where it is left is first estimated from the
+     * speed of the curve at its end and the size of the shape. From that estimate, moving back until outside brackets
+     * the crossing, which is then refined by regula falsi. Both loops are bounded.
+     */
+    private static double exit(double x0, double y0, double x1, double y1, double x2, double y2,
+                               double cx, double cy, double a, double b, boolean circle) {
+        double fIn = outside(1, x0, y0, x1, y1, x2, y2, cx, cy, a, b, circle);
+        if (fIn > 0) return 1;
+
+        double speed = 2 * Math.hypot(x2 - x1, y2 - y1);
+        double size = circle ? a : Math.hypot(a, b);
+        double span = speed < EPSILON ? 1 : Math.min(1, Math.max(1e-3, size / speed));
+        double tOut = 1 - span;
+        double fOut = outside(tOut, x0, y0, x1, y1, x2, y2, cx, cy, a, b, circle);
+        while (fOut <= 0) {
+            if (tOut <= 0) return -1;
+            span = Math.min(1, span * 2);
+            tOut = 1 - span;
+            fOut = outside(tOut, x0, y0, x1, y1, x2, y2, cx, cy, a, b, circle);
+        }
+
+        double tIn = 1;
+        int side = 0;
+        for (int i = 0; i < 40 && tIn - tOut > 1e-6; i++) {
+            double t = (tOut * fIn - tIn * fOut) / (fIn - fOut);
+            double f = outside(t, x0, y0, x1, y1, x2, y2, cx, cy, a, b, circle);
+            if (Math.abs(f) < 1e-3) return t;
+            if (f > 0) {
+                tOut = t;
+                fOut = f;
+                // Illinois: halve the other end if the same one moved twice, to keep converging fast
+                if (side == 1) fIn /= 2;
+                side = 1;
+            } else {
+                tIn = t;
+                fIn = f;
+                if (side == -1) fOut /= 2;
+                side = -1;
+            }
+        }
+        return tOut;
+    }
+
+    /**
+     * Positive outside of the shape, negative inside and zero on its boundary.
+     */
+    private static double outside(double t, double x0, double y0, double x1, double y1, double x2, double y2,
+                                  double cx, double cy, double a, double b, boolean circle) {
+        double u = 1 - t;
+        double x = u * u * x0 + 2 * u * t * x1 + t * t * x2 - cx;
+        double y = u * u * y0 + 2 * u * t * y1 + t * t * y2 - cy;
+        return circle ? Math.hypot(x, y) - a : Math.max(Math.abs(x) - a, Math.abs(y) - b);
+    }
+}
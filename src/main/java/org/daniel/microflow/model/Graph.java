@@ -1,37 +1,52 @@
 package org.daniel.microflow.model;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import org.daniel.microflow.gson.Ellipse2DFloatAdapter;
-import org.daniel.microflow.gson.PointAdapter;
-import org.daniel.microflow.gson.PolygonAdapter;
-import org.daniel.microflow.gson.QuadCurve2DFloatAdapter;
-import org.daniel.microflow.gson.RectangleAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.daniel.microflow.gson.AsciiWriter;
+import org.daniel.microflow.gson.GraphAdapter;
 
 import java.awt.*;
-import java.awt.geom.Ellipse2D;
-import java.awt.geom.QuadCurve2D;
 import java.io.*;
 import java.nio.charset.Charset;
-import java.nio.charset.CharsetDecoder;
-import java.util.Iterator;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public class Graph {
 
-    private transient static final Gson gson = new GsonBuilder()
-            .registerTypeAdapter(Point.class, new PointAdapter())
-            .registerTypeAdapter(Rectangle.class, new RectangleAdapter())
-            .registerTypeAdapter(Polygon.class, new PolygonAdapter())
-            .registerTypeAdapter(QuadCurve2D.Float.class, new QuadCurve2DFloatAdapter())
-            .registerTypeAdapter(Ellipse2D.Float.class, new Ellipse2DFloatAdapter())
-            .create();
+    /**
+     * Older versions read files as ISO-8859-1. Files are now written in ASCII, non ASCII characters being escaped, so
+     * they read the same with any charset.
+     */
+    private static final Charset FILE_CHARSET = StandardCharsets.ISO_8859_1;
 
     private LinkedList<Node> nodes;
     private LinkedList<Edge> edges;
     private LinkedList<Action> actions;
-    private transient LinkedList<String> phases;
+    private transient UndoHistory history;
+    private transient Edit edit;
+    private transient boolean replaying;
+    private transient SpatialIndex index;
+    private transient long nextOrder;
+    private transient int nextId;
+    private transient FileFormat format;
+    private transient Journal journal;
+    private transient Map<Node, List<Edge>> outgoing;
+    private transient Map<Node, List<Edge>> incoming;
+    private transient List<Consumer<Rectangle>> damageListeners;
     private int stateCount;
     private int interfaceCount;
 
@@ -39,36 +54,433 @@ public class Graph {
         nodes = new LinkedList<>();
         edges = new LinkedList<>();
         actions = new LinkedList<>();
-        phases = new LinkedList<>();
-        addPhase();
+        history = new UndoHistory();
+        index = new SpatialIndex();
+        outgoing = new IdentityHashMap<>();
+        incoming = new IdentityHashMap<>();
+        damageListeners = new ArrayList<>();
+        format = FileFormat.JSON;
     }
 
+    /**
+     * Returns the topmost element at {@code p}: nodes first, then actions, then edges. Within each kind the most
+     * recently added element wins, as it is the one painted on top.
+     */
     public Element getElementAt(Point p) {
-        for (Iterator<Node> i = nodes.descendingIterator(); i.hasNext(); ) {
-            Node n = i.next();
-            if (n.contains(p)) return n;
+        List<Element> candidates = new ArrayList<>();
+        index.query(p, candidates);
+
+        Element node = null, action = null, edge = null;
+        for (Element e : candidates) {
+            if (e instanceof Node) {
+                if (isAbove(e, node) && e.contains(p)) node = e;
+            } else if (e instanceof Action) {
+                if (isAbove(e, action) && e.contains(p)) action = e;
+            } else if (isAbove(e, edge) && e.contains(p)) {
+                edge = e;
+            }
+        }
+
+        if (node != null) return node;
+        if (action != null) return action;
+        return edge;
+    }
+
+    private static boolean isAbove(Element e, Element current) {
+        return current == null || e.getOrder() > current.getOrder();
+    }
+
+    /**
+     * Returns the edges and nodes that have to be drawn to paint {@code area}, edges first and each kind in the order
+     * they are painted. Actions are drawn by their edge, so an action in the area brings its edge.
+     */
+    public List<Element> getDrawablesIn(Rectangle area) {
+        List<Element> found = new ArrayList<>();
+        index.query(area, found);
+
+        Set<Element> drawables = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Element> edgesIn = new ArrayList<>();
+        List<Element> nodesIn = new ArrayList<>();
+        for (Element e : found) {
+            if (e instanceof Action) {
+                e = ((Action) e).getParent();
+                if (e == null) continue;
+            }
+            if (drawables.add(e)) (e instanceof Node ? nodesIn : edgesIn).add(e);
+        }
+        Comparator<Element> order = Comparator.comparingLong(Element::getOrder);
+        edgesIn.sort(order);
+        nodesIn.sort(order);
+        edgesIn.addAll(nodesIn);
+        return edgesIn;
+    }
+
+    /**
+     * Copies of {@link #getDrawablesIn(Rectangle)}, to be drawn from another thread while this graph keeps being edited.
+     * The edges come with copies of their nodes and without their actions.
+     */
+    public List<Element> copyDrawablesIn(Rectangle area) {
+        List<Element> drawables = getDrawablesIn(area);
+        Map<Node, Node> nodeCopies = new IdentityHashMap<>();
+        List<Element> copies = new ArrayList<>(drawables.size());
+        for (Element e : drawables) {
+            if (e instanceof Node) {
+                copies.add(nodeCopies.computeIfAbsent((Node) e, Node::new));
+            } else {
+                Edge edge = (Edge) e;
+                nodeCopies.computeIfAbsent(edge.getN1(), Node::new);
+                nodeCopies.computeIfAbsent(edge.getN2(), Node::new);
+                copies.add(new Edge(edge, nodeCopies, null));
+            }
+        }
+        return copies;
+    }
+
+    /**
+     * Area covered, before and after, by the elements added, removed or changed since the last call, for the view to
+     * paint only that. Changes of selection are not included.
+     *
+     * @return the area, or null if nothing changed
+     */
+    public Rectangle takeDamage() {
+        Rectangle damage = index.takeDamage();
+        if (damage != null) {
+            for (Consumer<Rectangle> listener : damageListeners) {
+                listener.accept(damage);
+            }
+        }
+        return damage;
+    }
+
+    /**
+     * Adds a listener told of every area returned by {@link #takeDamage()}, for other views of the graph to follow the
+     * same changes as the one that takes it.
+     */
+    public void addDamageListener(Consumer<Rectangle> listener) {
+        damageListeners.add(listener);
+    }
+
+    /**
+     * Must be called whenever the geometry of an element already in the graph changes, so that it can still be found
+     * by {@link #getElementAt(Point)}.
+     */
+    public void elementChanged(Element e) {
+        if (index.contains(e)) {
+            index.update(e, e.getExtent());
+            touch(e);
+        }
+        if (e instanceof Edge && ((Edge) e).getAction() != null) {
+            elementChanged(((Edge) e).getAction());
+        }
+    }
+
+    private void indexElement(Element e) {
+        if (e.getId() == 0) e.setId(++nextId);
+        e.setOrder(++nextOrder);
+        index.insert(e, e.getExtent());
+        touch(e);
+    }
+
+    /**
+     * Tells the journal, if any, that an element was added, changed or removed.
+     */
+    private void touch(Element e) {
+        if (journal != null) journal.touch(e);
+    }
+
+    boolean contains(Element e) {
+        return index.contains(e);
+    }
+
+    void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    private void rebuildIndex() {
+        index.clear();
+        outgoing.clear();
+        incoming.clear();
+        assignIds();
+        for (Node n : nodes) indexElement(n);
+        for (Edge e : edges) {
+            e.setGraph(this);
+            indexElement(e);
+            linkEdge(e);
         }
-        for (Iterator<Action> i = actions.descendingIterator(); i.hasNext(); ) {
-            Action a = i.next();
-            if (a.contains(p)) return a;
+        for (Action a : actions) indexElement(a);
+    }
+
+    /**
+     * Keeps the ids read from a file and gives a new one to the elements without one, as in files saved by older
+     * versions, or with one already taken.
+     */
+    private void assignIds() {
+        List<Element> all = new ArrayList<>(nodes.size() + edges.size() + actions.size());
+        all.addAll(nodes);
+        all.addAll(edges);
+        all.addAll(actions);
+
+        nextId = 0;
+        for (Element e : all) nextId = Math.max(nextId, e.getId());
+        Set<Integer> used = new HashSet<>();
+        for (Element e : all) {
+            if (e.getId() <= 0 || !used.add(e.getId())) e.setId(++nextId);
         }
-        for (Iterator<Edge> i = edges.descendingIterator(); i.hasNext(); ) {
-            Edge e = i.next();
-            if (e.contains(p)) return e;
+    }
+
+    /**
+     * Adjacency lists are kept in the same order as {@link #getEdges()}, so iterating them gives the same result as
+     * filtering the whole edge list.
+     */
+    private void linkEdge(Edge e) {
+        insertOrdered(outgoing.computeIfAbsent(e.getN1(), k -> new ArrayList<>(2)), e);
+        insertOrdered(incoming.computeIfAbsent(e.getN2(), k -> new ArrayList<>(2)), e);
+    }
+
+    private boolean unlinkEdge(Edge e, Node n1, Node n2) {
+        boolean linked = removeFrom(outgoing, n1, e);
+        removeFrom(incoming, n2, e);
+        return linked;
+    }
+
+    private static <T extends Element> void insertOrdered(List<T> list, T e) {
+        ListIterator<T> i = list.listIterator(list.size());
+        while (i.hasPrevious()) {
+            if (i.previous().getOrder() < e.getOrder()) {
+                i.next();
+                break;
+            }
+        }
+        i.add(e);
+    }
+
+    private static boolean removeFrom(Map<Node, List<Edge>> adjacency, Node n, Edge e) {
+        List<Edge> list = adjacency.get(n);
+        if (list == null || !list.remove(e)) return false;
+        if (list.isEmpty()) adjacency.remove(n);
+        return true;
+    }
+
+    /**
+     * Called by an edge after swapping its endpoints (read/write operations).
+     */
+    void endpointsChanged(Edge e, Node oldN1, Node oldN2) {
+        if (unlinkEdge(e, oldN1, oldN2)) {
+            linkEdge(e);
+        }
+    }
+
+    public List<Edge> getOutgoingEdges(Node n) {
+        return Collections.unmodifiableList(outgoing.getOrDefault(n, Collections.emptyList()));
+    }
+
+    public List<Edge> getIncomingEdges(Node n) {
+        return Collections.unmodifiableList(incoming.getOrDefault(n, Collections.emptyList()));
+    }
+
+    /**
+     * Outgoing and incoming edges of {@code n} merged in graph order. Edges to the same node are returned once.
+     */
+    public List<Edge> getIncidentEdges(Node n) {
+        List<Edge> out = outgoing.getOrDefault(n, Collections.emptyList());
+        List<Edge> in = incoming.getOrDefault(n, Collections.emptyList());
+        List<Edge> incident = new ArrayList<>(out.size() + in.size());
+        int i = 0, j = 0;
+        while (i < out.size() || j < in.size()) {
+            if (j == in.size() || i < out.size() && out.get(i).getOrder() < in.get(j).getOrder()) {
+                incident.add(out.get(i++));
+            } else if (i < out.size() && out.get(i) == in.get(j)) {
+                incident.add(out.get(i++));
+                j++;
+            } else {
+                incident.add(in.get(j++));
+            }
+        }
+        return incident;
+    }
+
+    /**
+     * Moves a node and updates the edges attached to it.
+     */
+    public void moveNode(Node n, Point center) {
+        record(n);
+        for (Edge e : getIncidentEdges(n)) {
+            record(e);
+        }
+        n.setCenter(center);
+        elementChanged(n);
+        for (Edge e : getIncidentEdges(n)) {
+            e.update();
+            elementChanged(e);
         }
-        return null;
     }
 
     public void addNode(Node n) {
         nodes.add(n);
+        indexElement(n);
+        if (edit != null) edit.recordAdd(n);
     }
 
     public void addEdge(Edge e) {
         edges.add(e);
+        indexElement(e);
+        linkEdge(e);
+        if (edit != null) edit.recordAdd(e);
     }
 
     public void addAction(Action a) {
         actions.add(a);
+        indexElement(a);
+        if (edit != null) edit.recordAdd(a);
+    }
+
+    /**
+     * Puts back an element removed by an edit, in the same position of its list.
+     */
+    void insertElement(Element e) {
+        if (e instanceof Node) {
+            insertOrdered(nodes, (Node) e);
+        } else if (e instanceof Edge) {
+            insertOrdered(edges, (Edge) e);
+            linkEdge((Edge) e);
+        } else {
+            insertOrdered(actions, (Action) e);
+        }
+        index.insert(e, e.getExtent());
+        touch(e);
+    }
+
+    void removeElement(Element e) {
+        if (e instanceof Node) {
+            nodes.remove(e);
+        } else if (e instanceof Edge) {
+            edges.remove(e);
+            unlinkEdge((Edge) e, ((Edge) e).getN1(), ((Edge) e).getN2());
+        } else {
+            actions.remove(e);
+        }
+        index.remove(e);
+        touch(e);
+    }
+
+    void nodeRestored(Node n) {
+        for (Edge e : getIncidentEdges(n)) {
+            e.update();
+        }
+    }
+
+    void setCounts(int stateCount, int interfaceCount) {
+        this.stateCount = stateCount;
+        this.interfaceCount = interfaceCount;
+    }
+
+    /**
+     * Starts grouping every following change into a single undoable edit. An edit that is still open is closed first.
+     */
+    public void beginEdit() {
+        endEdit();
+        edit = new Edit(stateCount, interfaceCount);
+    }
+
+    /**
+     * Closes the current edit, if any, and adds it to the undo history unless it did not change anything. The changes
+     * are then appended to the journal.
+     */
+    public void endEdit() {
+        if (edit != null) {
+            Edit closed = edit;
+            edit = null;
+            if (closed.close(stateCount, interfaceCount)) {
+                history.push(closed);
+            }
+        }
+        if (journal != null) journal.flush();
+    }
+
+    /**
+     * Must be called before modifying an element of the graph so that the change can be undone. Recording an edge
+     * also records its action, which follows the edge when it changes.
+     */
+    public void record(Element e) {
+        if (!index.contains(e)) return;
+        Action action = e instanceof Edge ? ((Edge) e).getAction() : null;
+        touch(e);
+        if (action != null) touch(action);
+        if (edit == null || replaying) return;
+        edit.recordState(e);
+        if (action != null) {
+            edit.recordState(action);
+        }
+    }
+
+    public void undo() {
+        endEdit();
+        replay(history.undo(), true);
+    }
+
+    public void redo() {
+        endEdit();
+        replay(history.redo(), false);
+    }
+
+    private void replay(Edit e, boolean undo) {
+        if (e == null) return;
+        replaying = true;
+        try {
+            if (undo) {
+                e.undo(this);
+            } else {
+                e.redo(this);
+            }
+        } finally {
+            replaying = false;
+        }
+        if (journal != null) journal.flush();
+    }
+
+    public boolean canUndo() {
+        return history.canUndo();
+    }
+
+    public boolean canRedo() {
+        return history.canRedo();
+    }
+
+    /**
+     * Estimated memory, in bytes, used by the undo history of this graph.
+     */
+    public long getHistoryFootprint() {
+        return history.getFootprint();
+    }
+
+    /**
+     * Estimated memory, in bytes, used by the undo histories of every open graph.
+     */
+    public static long getTotalHistoryFootprint() {
+        return UndoHistory.getGlobalFootprint();
+    }
+
+    /**
+     * Counts the undo history of this graph in the budget shared by every open graph. Only the graphs shown to the
+     * user are, not the ones made while loading or the snapshots.
+     */
+    public void registerHistory() {
+        history.register();
+    }
+
+    /**
+     * Stops counting the undo history of this graph in the global budget, once it is no longer shown.
+     */
+    public void unregisterHistory() {
+        history.unregister();
+    }
+
+    /**
+     * Sets the maximum memory, in bytes, that the undo history of each graph and of all of them together can use.
+     */
+    public static void setHistoryBudget(long perGraph, long global) {
+        UndoHistory.setTabBudget(perGraph);
+        UndoHistory.setGlobalBudget(global);
     }
 
     public List<Node> getNodes() {
@@ -79,25 +491,50 @@ public class Graph {
         return edges;
     }
 
+    public List<Action> getActions() {
+        return actions;
+    }
+
     public void deleteNode(Node n) {
-        for (Iterator<Edge> i = edges.iterator(); i.hasNext(); ) {
-            Edge e = i.next();
-            if (e.getN1() == n || e.getN2() == n) {
-                i.remove();
+        List<Edge> incident = getIncidentEdges(n);
+        if (!incident.isEmpty()) {
+            Map<Edge, Boolean> removed = new IdentityHashMap<>();
+            for (Edge e : incident) removed.put(e, Boolean.TRUE);
+            edges.removeIf(removed::containsKey);
+            for (Edge e : incident) {
+                unindexEdge(e);
                 decrementEdgesCount(e);
             }
         }
 
         nodes.remove(n);
+        index.remove(n);
+        touch(n);
+        if (edit != null) edit.recordRemove(n);
         decrementStatesCount(n);
     }
 
+    private void unindexEdge(Edge e) {
+        unlinkEdge(e, e.getN1(), e.getN2());
+        index.remove(e);
+        touch(e);
+        if (edit != null) edit.recordRemove(e);
+        if (e.getAction() != null) {
+            actions.remove(e.getAction());
+            index.remove(e.getAction());
+            touch(e.getAction());
+            if (edit != null) edit.recordRemove(e.getAction());
+        }
+    }
+
     public void decrementStatesCount(Node n) {
         if (n.getType().equals(NodeType.STATE)) {
             int count = 0;
             for (Node k : nodes) {
                 if (k.getType().equals(NodeType.STATE) && !k.nameHold()) {
+                    record(k);
                     k.setName(String.valueOf(count++));
+                    elementChanged(k);
                 }
             }
             stateCount--;
@@ -106,15 +543,20 @@ public class Graph {
 
     public void deleteEdge(Edge e) {
         edges.remove(e);
+        unindexEdge(e);
         decrementEdgesCount(e);
     }
 
     public void deleteAction(Action a) {
         for (Edge e : edges) {
             if (e.getAction() == a) {
+                record(e);
                 e.setAction(null);
             }
         }
+        if (actions.remove(a) && edit != null) edit.recordRemove(a);
+        index.remove(a);
+        touch(a);
     }
 
     public void decrementEdgesCount(Edge e) {
@@ -122,7 +564,9 @@ public class Graph {
             int count = 0;
             for (Edge k : edges) {
                 if (k.getType().equals(EdgeType.INTERFACE) && !k.nameHold()) {
+                    record(k);
                     k.setName(String.valueOf(count++));
+                    elementChanged(k);
                 }
             }
             interfaceCount--;
@@ -139,7 +583,9 @@ public class Graph {
                     if (count == changedTo) {
                         count++;
                     } else {
+                        record(k);
                         k.setName(String.valueOf(count++));
+                        elementChanged(k);
                     }
                 }
             }
@@ -156,7 +602,9 @@ public class Graph {
                     if (count == changedTo) {
                         count++;
                     } else {
+                        record(k);
                         k.setName(String.valueOf(count++));
+                        elementChanged(k);
                     }
                 }
             }
@@ -169,6 +617,9 @@ public class Graph {
         nodes.clear();
         edges.clear();
         actions.clear();
+        index.clear();
+        outgoing.clear();
+        incoming.clear();
     }
 
     /**
@@ -192,47 +643,214 @@ public class Graph {
         );
     }
 
-    public boolean loadFromJson(String json) {
+    /**
+     * Loads a file in any of the formats, detected from its contents.
+     */
+    public boolean loadFromFile(String path) {
         try {
-            Graph g = fromJson(json);
-            edges = g.edges;
-            nodes = g.nodes;
-            actions = g.actions;
+            load(path, ProgressListener.NONE);
             return true;
-        } catch (Exception e) {
+        } catch (IOException | RuntimeException e) {
             e.printStackTrace();
             return false;
         }
     }
 
-    public boolean loadFromFile(String path) {
-        try {
-            CharsetDecoder decoder = Charset.forName("ISO-8859-1").newDecoder();
-            InputStreamReader stream = new InputStreamReader(new FileInputStream(new File(path)), decoder);
-            BufferedReader reader = new BufferedReader(stream);
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
-            }
-            return loadFromJson(sb.toString());
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
+    /**
+     * Same as {@link #loadFromFile(String)}, but reports the progress and lets errors through. The graph is left as it
+     * was if loading fails or is cancelled.
+     */
+    public void load(String path, ProgressListener progress) throws IOException {
+        Path file = Paths.get(path);
+        if (BinaryFormat.isBinary(file)) {
+            replaceWith(BinaryFormat.read(file, progress));
+            format = FileFormat.BINARY;
+        } else {
+            replaceWith(readJson(file, progress));
+            format = FileFormat.JSON;
+        }
+    }
+
+    /**
+     * Replaces the graph with the one left in an autosave journal. Like {@link #load(String, ProgressListener)}, the
+     * graph is left as it was if it fails.
+     */
+    public void recover(Path journal) throws IOException {
+        replaceWith(Journal.read(journal));
+        format = FileFormat.JSON;
+    }
+
+    private static Graph readJson(Path file, ProgressListener progress) throws IOException {
+        try (JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(
+                new ProgressInputStream(Files.newInputStream(file), Files.size(file), progress), FILE_CHARSET)))) {
+            reader.setLenient(true);
+            return new GraphAdapter(ProgressListener.NONE).read(reader);
         }
     }
 
+    /**
+     * Saves in the format the graph was loaded from or last saved in.
+     */
     public boolean saveToFile(String path) {
-        try (FileWriter fw = new FileWriter(path)) {
-            fw.write(toJson());
-            fw.close();
+        return saveToFile(path, format);
+    }
+
+    public boolean saveToFile(String path, FileFormat format) {
+        try {
+            save(path, format, ProgressListener.NONE);
+            this.format = format;
             return true;
-        } catch (IOException e) {
+        } catch (IOException | RuntimeException e) {
             e.printStackTrace();
             return false;
         }
     }
 
+    /**
+     * Writes the graph to a file, reporting the progress and letting errors through. Unlike
+     * {@link #saveToFile(String, FileFormat)} it does not change the format of the graph, so it can be used on a
+     * {@link #snapshot()} from another thread.
+     *
+     * The file is replaced atomically: if the save fails, is cancelled or the machine crashes, it keeps its previous
+     * contents.
+     */
+    public void save(String path, FileFormat format, ProgressListener progress) throws IOException {
+        Path target = Paths.get(path);
+        Path temporary = AtomicFile.temporary(target);
+        try {
+            if (format == FileFormat.BINARY) {
+                BinaryFormat.write(this, temporary, progress);
+            } else {
+                try (FileOutputStream out = new FileOutputStream(temporary.toFile());
+                     JsonWriter writer = new JsonWriter(new BufferedWriter(new AsciiWriter(
+                             new OutputStreamWriter(out, FILE_CHARSET))))) {
+                    new GraphAdapter(progress).write(writer, this);
+                    writer.flush();
+                    out.getFD().sync();
+                }
+            }
+            AtomicFile.commit(temporary, target);
+        } catch (IOException | RuntimeException e) {
+            AtomicFile.discard(temporary);
+            throw e;
+        }
+    }
+
+    /**
+     * Writes a PNG image of part of the graph, reporting the progress and letting errors through. It can be used on a
+     * {@link #snapshot()} from another thread, and the image is drawn in strips, so that neither the event dispatch
+     * thread nor the memory depend on its size. The file is replaced atomically, as in
+     * {@link #save(String, FileFormat, ProgressListener)}.
+     *
+     * @param area       part of the diagram in the image, see {@link #getContentBounds()}
+     * @param scale      pixels of the image per pixel of the diagram; the image is marked as 96 DPI times this
+     * @param background color of the image where there is nothing
+     */
+    public void exportPng(String path, Rectangle area, double scale, Color background, ProgressListener progress)
+            throws IOException {
+        Path target = Paths.get(path);
+        Path temporary = AtomicFile.temporary(target);
+        try {
+            PngFormat.write(this, temporary, area, scale, background, progress);
+            AtomicFile.commit(temporary, target);
+        } catch (IOException | RuntimeException e) {
+            AtomicFile.discard(temporary);
+            throw e;
+        }
+    }
+
+    /**
+     * Smallest rectangle with everything drawn in the diagram, or null if it is empty.
+     */
+    public Rectangle getContentBounds() {
+        Rectangle bounds = null;
+        for (List<? extends Element> elements : Arrays.asList(nodes, edges, actions)) {
+            for (Element e : elements) {
+                if (bounds == null) {
+                    bounds = e.getExtent();
+                } else {
+                    bounds.add(e.getExtent());
+                }
+            }
+        }
+        return bounds;
+    }
+
+    public FileFormat getFileFormat() {
+        return format;
+    }
+
+    public void setFileFormat(FileFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * Copy of the elements of the graph, to be read from another thread while this one keeps being edited. It has the
+     * same ids, counters and adjacency lists, but neither spatial index nor undo history, so it must not be edited.
+     */
+    public Graph snapshot() {
+        Graph copy = new Graph();
+        Map<Node, Node> nodeCopies = new IdentityHashMap<>();
+        Map<Action, Action> actionCopies = new IdentityHashMap<>();
+        for (Node n : nodes) {
+            Node c = new Node(n);
+            nodeCopies.put(n, c);
+            copy.nodes.add(c);
+        }
+        for (Edge e : edges) {
+            Edge c = new Edge(e, nodeCopies, copy);
+            if (e.getAction() != null) {
+                Action a = new Action(e.getAction(), c);
+                c.setAction(a);
+                actionCopies.put(e.getAction(), a);
+            }
+            copy.edges.add(c);
+            copy.linkEdge(c);
+        }
+        for (Action a : actions) {
+            Action c = actionCopies.get(a);
+            if (c != null) copy.actions.add(c);
+        }
+        copy.stateCount = stateCount;
+        copy.interfaceCount = interfaceCount;
+        copy.nextId = nextId;
+        copy.nextOrder = nextOrder;
+        copy.format = format;
+        return copy;
+    }
+
+    /**
+     * Replaces the contents of this graph with the elements of {@code g}, which is discarded.
+     */
+    private void replaceWith(Graph g) {
+        nodes = g.nodes;
+        edges = g.edges;
+        actions = g.actions;
+        rebuildIndex();
+        recount();
+        edit = null;
+        history.clear();
+    }
+
+    /**
+     * Counters are not trusted from the file, the next numbers are the ones after the highest state and interface.
+     */
+    private void recount() {
+        stateCount = 0;
+        interfaceCount = 0;
+        for (Node n : nodes) {
+            try {
+                stateCount = Math.max(stateCount, Integer.parseInt(n.getName()) + 1);
+            } catch (NumberFormatException ok) { }
+        }
+        for (Edge e : edges) {
+            if (e.getType().equals(EdgeType.INTERFACE)) {
+                try {
+                    interfaceCount = Math.max(interfaceCount, Integer.parseInt(e.getName()) + 1);
+                } catch (NumberFormatException ok) { }
+            }
+        }
+    }
 
     public boolean canBeExported(int isTAD) {
         boolean tadFound = false;
@@ -259,59 +877,6 @@ public class Graph {
 
     }
 
-    private String toJson() {
-        return gson.toJson(this);
-    }
-
-    private Graph fromJson(String json) {
-        Graph g = gson.fromJson(json, Graph.class);
-        for (Edge e : g.edges) {
-            e.setSelected(false);
-            if (e.getType().equals(EdgeType.INTERFACE)) {
-                try {
-                    int ours = interfaceCount;
-                    int theirs = Integer.parseInt(e.getName());
-                    if (ours <= theirs) {
-                        interfaceCount = theirs + 1;
-                    }
-                } catch (NumberFormatException ok) { }
-            }
-            for (Node n : g.nodes) {
-                try {
-                    int ours = stateCount;
-                    int theirs = Integer.parseInt(n.getName());
-                    if (ours <= theirs) {
-                        stateCount = theirs + 1;
-                    }
-                } catch (NumberFormatException ok) { }
-                if (e.getN1().equals(n)) e.setN1(n);
-                if (e.getN2().equals(n)) e.setN2(n);
-                n.setSelected(false);
-                e.setGraph(g);
-            }
-            if (e.getAction() != null) {
-                int size = g.actions.size();
-                for (int i = 0; i < size; i++) {
-                    Action a = g.actions.get(i);
-                    if (a.equals(e.getAction())) {
-                        g.actions.set(i, e.getAction());
-                        e.getAction().setParent(e);
-                    }
-                }
-            }
-        }
-        return g;
-    }
-
-    public void addPhase() {
-        phases.add(toJson());
-    }
-
-    public void undo() {
-        loadFromJson(phases.getLast());
-        if (phases.size() > 1) phases.removeLast();
-    }
-
     public int getStateCount() {
         return stateCount;
     }
@@ -0,0 +1,421 @@
+package org.daniel.microflow.model;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.daniel.microflow.gson.ActionAdapter;
+import org.daniel.microflow.gson.EdgeAdapter;
+import org.daniel.microflow.gson.GraphAdapter;
+import org.daniel.microflow.gson.NodeAdapter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+/**
+ * Autosave of a single graph, so that a crash loses at most the edit in progress.
+ *
+ * The journal is a text file with one JSON record per line. The first one is the base: either a whole graph or the
+ * file the graph was last saved to or loaded from, with its size and modification time so that the records are not
+ * applied to a file that changed since. Every following record is the new state of an element, by id, or
+ * the id of an element that was removed. Only the elements changed by an edit are appended after it, and once there
+ * are more records than elements the journal is rewritten as a single base.
+ *
+ * Copies of the changed elements are taken on the event dispatch thread; turning them into records and writing them
+ * is left to the executor of the graph. The journal is deleted when the graph is closed; the ones left behind by a
+ * crash can be found with {@link #findAbandoned()} and read back with {@link Graph#recover(Path)}.
+ */
+public class Journal {
+
+    private static final int FORMAT = 1;
+    private static final String EXTENSION = ".journal";
+
+    /**
+     * Smallest number of records appended before the journal is rewritten, so that small graphs are not rewritten
+     * after every few edits.
+     */
+    private static final int COMPACT_AFTER = Integer.getInteger("microflow.autosave.compactAfter", 1000);
+
+    /**
+     * Journals of this instance, which must not be offered for recovery even before they are locked.
+     */
+    private static final Set<Path> open = new HashSet<>();
+
+    private final Graph graph;
+    private final Executor io;
+    private final Path path;
+    private final Set<Element> dirty;
+    private final NodeAdapter nodeAdapter;
+    private final EdgeAdapter edgeAdapter;
+    private final ActionAdapter actionAdapter;
+    private int appended;
+
+    /* Only used from the executor */
+    private FileChannel channel;
+    private FileLock lock;
+    private boolean failed;
+
+    /**
+     * Starts the journal of a graph.
+     *
+     * @param source file the graph was just loaded from, used as the base instead of copying the whole graph, or null
+     */
+    public Journal(Graph graph, Executor io, File source) {
+        this.graph = graph;
+        this.io = io;
+        path = getDirectory().resolve("diagram-" + UUID.randomUUID() + EXTENSION);
+        dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+        nodeAdapter = new NodeAdapter();
+        edgeAdapter = new EdgeAdapter(null, null);
+        actionAdapter = new ActionAdapter(null);
+        open.add(path);
+        graph.setJournal(this);
+
+        if (source != null) {
+            Path file = source.toPath().toAbsolutePath();
+            io.execute(() -> rewriteOnFile(file));
+        } else {
+            Graph copy = graph.snapshot();
+            io.execute(() -> rewrite(graphBase(copy)));
+        }
+    }
+
+    void touch(Element e) {
+        dirty.add(e);
+    }
+
+    /**
+     * Appends the elements changed since the last call, or rewrites the journal if it has grown too long. Called by
+     * the graph after every edit.
+     */
+    public void flush() {
+        if (dirty.isEmpty()) return;
+        if (appended >= COMPACT_AFTER && appended >= graph.getNodes().size() + graph.getEdges().size()) {
+            dirty.clear();
+            appended = 0;
+            Graph copy = graph.snapshot();
+            io.execute(() -> rewrite(graphBase(copy)));
+            return;
+        }
+
+        List<Element> changed = new ArrayList<>(dirty.size());
+        List<Integer> removed = new ArrayList<>();
+        for (Element e : dirty) {
+            if (graph.contains(e)) {
+                changed.add(copy(e));
+            } else {
+                removed.add(e.getId());
+            }
+        }
+        appended += dirty.size();
+        dirty.clear();
+        io.execute(() -> append(changed, removed));
+    }
+
+    /**
+     * Makes a file the new base of the journal. It must be called from the executor, after writing a snapshot taken
+     * right after a {@link #flush()}, so that the records still to be appended are the changes made since then.
+     */
+    public void saved(Path file) {
+        rewriteOnFile(file.toAbsolutePath());
+    }
+
+    /**
+     * Stops the journal and deletes it once the pending records are written.
+     */
+    public void close() {
+        graph.setJournal(null);
+        dirty.clear();
+        io.execute(() -> {
+            release();
+            failed = true;
+            discard(path);
+        });
+        open.remove(path);
+    }
+
+    /**
+     * Copy with what a record needs, as the element itself can change before it is written. Edges only need the ids
+     * of their nodes and actions the id of their edge, which don't change.
+     */
+    private static Element copy(Element e) {
+        if (e instanceof Node) {
+            return new Node((Node) e);
+        } else if (e instanceof Edge) {
+            Edge edge = (Edge) e;
+            Map<Node, Node> ends = new IdentityHashMap<>();
+            ends.put(edge.getN1(), new Node(edge.getN1()));
+            ends.put(edge.getN2(), new Node(edge.getN2()));
+            return new Edge(edge, ends, null);
+        } else {
+            Action action = (Action) e;
+            return new Action(action, action.getParent());
+        }
+    }
+
+    private String record(Element e) {
+        if (e instanceof Node) {
+            return "{\"node\":" + nodeAdapter.toJson((Node) e) + "}";
+        } else if (e instanceof Edge) {
+            return "{\"edge\":" + edgeAdapter.toJson((Edge) e) + "}";
+        } else {
+            return "{\"action\":" + actionAdapter.toJson((Action) e) + "}";
+        }
+    }
+
+    private static String fileBase(Path file) throws IOException {
+        JsonObject base = new JsonObject();
+        base.addProperty("format", FORMAT);
+        base.addProperty("file", file.toString());
+        base.addProperty("size", Files.size(file));
+        base.addProperty("modified", Files.getLastModifiedTime(file).toMillis());
+        return base.toString();
+    }
+
+    private static String graphBase(Graph g) {
+        return "{\"format\":" + FORMAT + ",\"graph\":" + new GraphAdapter().toJson(g) + "}";
+    }
+
+    private void append(List<Element> changed, List<Integer> removed) {
+        if (failed || channel == null) return;
+        StringBuilder records = new StringBuilder();
+        for (Element e : changed) records.append(record(e)).append('\n');
+        for (int id : removed) records.append("{\"remove\":").append(id).append("}\n");
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(false);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void rewriteOnFile(Path file) {
+        if (failed) return;
+        try {
+            rewrite(fileBase(file));
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Replaces the whole journal with a new base.
+     */
+    private void rewrite(String base) {
+        if (failed) return;
+        Path temporary = AtomicFile.temporary(path);
+        try {
+            Files.createDirectories(path.getParent());
+            try (FileOutputStream out = new FileOutputStream(temporary.toFile());
+                 Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+                writer.write(base);
+                writer.write('\n');
+                writer.flush();
+                out.getFD().sync();
+            }
+            release();
+            AtomicFile.commit(temporary, path);
+            channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            lock = channel.tryLock();
+        } catch (IOException e) {
+            AtomicFile.discard(temporary);
+            fail(e);
+        }
+    }
+
+    private void release() {
+        try {
+            if (lock != null && lock.isValid()) lock.release();
+            if (channel != null) channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        lock = null;
+        channel = null;
+    }
+
+    /**
+     * Autosave is not worth interrupting the user: if the journal can't be written it is just stopped.
+     */
+    private void fail(IOException e) {
+        e.printStackTrace();
+        release();
+        failed = true;
+    }
+
+    /**
+     * Folder of the journals, which can be changed with the {@code microflow.autosave.dir} system property.
+     */
+    public static Path getDirectory() {
+        String dir = System.getProperty("microflow.autosave.dir");
+        return dir != null ? Paths.get(dir) : Paths.get(System.getProperty("user.home"), ".microflow", "autosave");
+    }
+
+    /**
+     * Journals left behind by a session that did not end properly. The ones still in use by another running instance
+     * are locked and skipped.
+     */
+    public static List<Path> findAbandoned() {
+        List<Path> abandoned = new ArrayList<>();
+        Path dir = getDirectory();
+        if (!Files.isDirectory(dir)) return abandoned;
+        try (DirectoryStream<Path> journals = Files.newDirectoryStream(dir, "*" + EXTENSION)) {
+            for (Path p : journals) {
+                if (open.contains(p)) continue;
+                try (FileChannel c = FileChannel.open(p, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                     FileLock l = c.tryLock()) {
+                    if (l != null) abandoned.add(p);
+                } catch (IOException | OverlappingFileLockException ignored) { }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return abandoned;
+    }
+
+    /**
+     * File the graph of a journal was last saved to or loaded from, if the journal has not been rewritten since.
+     */
+    public static File getSource(Path journal) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+            JsonObject base = readBase(reader);
+            return base.has("file") ? new File(base.get("file").getAsString()) : null;
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new IOException("Corrupt journal", e);
+        }
+    }
+
+    public static void discard(Path journal) {
+        try {
+            Files.deleteIfExists(journal);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Applies every record to the base and returns the resulting graph. A last record cut short by the crash is
+     * ignored.
+     *
+     * @throws StaleException if the base is a file that changed since the journal was written
+     */
+    static Graph read(Path journal) throws IOException {
+        GraphAdapter adapter = new GraphAdapter();
+        try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+            JsonObject base = readBase(reader);
+            JsonObject g;
+            if (base.has("file")) {
+                Path file = Paths.get(base.get("file").getAsString());
+                if (!base.has("size") || !base.has("modified") || !Files.isRegularFile(file)
+                        || Files.size(file) != base.get("size").getAsLong()
+                        || Files.getLastModifiedTime(file).toMillis() != base.get("modified").getAsLong()) {
+                    throw new StaleException(file);
+                }
+                Graph saved = new Graph();
+                saved.load(file.toString(), ProgressListener.NONE);
+                g = adapter.toJsonTree(saved).getAsJsonObject();
+            } else {
+                g = base.getAsJsonObject("graph");
+            }
+
+            Map<Integer, JsonObject> nodes = byId(g.getAsJsonArray("nodes"));
+            Map<Integer, JsonObject> edges = byId(g.getAsJsonArray("edges"));
+            Map<Integer, JsonObject> actions = byId(g.getAsJsonArray("actions"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonObject record;
+                try {
+                    record = JsonParser.parseString(line).getAsJsonObject();
+                } catch (JsonParseException | IllegalStateException e) {
+                    break;
+                }
+                if (record.has("remove")) {
+                    int id = record.get("remove").getAsInt();
+                    nodes.remove(id);
+                    edges.remove(id);
+                    actions.remove(id);
+                } else if (record.has("node")) {
+                    put(nodes, record.getAsJsonObject("node"));
+                } else if (record.has("edge")) {
+                    put(edges, record.getAsJsonObject("edge"));
+                } else if (record.has("action")) {
+                    put(actions, record.getAsJsonObject("action"));
+                }
+            }
+
+            JsonObject result = new JsonObject();
+            result.addProperty("version", GraphAdapter.VERSION);
+            result.add("nodes", toArray(nodes));
+            result.add("edges", toArray(edges));
+            result.add("actions", toArray(actions));
+            return adapter.fromJsonTree(result);
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new IOException("Corrupt journal", e);
+        }
+    }
+
+    private static JsonObject readBase(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null) throw new IOException("Empty journal");
+        JsonObject base = JsonParser.parseString(line).getAsJsonObject();
+        if (base.get("format").getAsInt() > FORMAT) {
+            throw new IOException("Journal written by a newer version");
+        }
+        return base;
+    }
+
+    private static Map<Integer, JsonObject> byId(JsonArray elements) {
+        Map<Integer, JsonObject> map = new LinkedHashMap<>();
+        if (elements != null) {
+            for (JsonElement e : elements) put(map, e.getAsJsonObject());
+        }
+        return map;
+    }
+
+    private static void put(Map<Integer, JsonObject> map, JsonObject element) {
+        map.put(element.get("id").getAsInt(), element);
+    }
+
+    private static JsonArray toArray(Map<Integer, JsonObject> elements) {
+        JsonArray array = new JsonArray();
+        for (JsonObject e : elements.values()) array.add(e);
+        return array;
+    }
+
+    /**
+     * The journal was written on top of a file that was changed, moved or deleted since, so its records can't be
+     * applied to it.
+     */
+    public static class StaleException extends IOException {
+
+        StaleException(Path file) {
+            super(file + " changed since it was autosaved");
+        }
+    }
+}
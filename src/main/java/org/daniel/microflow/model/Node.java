@@ -2,12 +2,14 @@ package org.daniel.microflow.model;
 
 import java.awt.*;
 import java.awt.geom.QuadCurve2D;
+import java.util.Objects;
 
 public class Node extends Element {
 
     protected Point center;
     protected NodeType type;
     private transient Graph graph;
+    private transient int version;
 
     private static final String TAD = "TAD";
 
@@ -24,8 +26,15 @@ public class Node extends Element {
         g.incStateCount();
     }
 
+    Node(Node other) {
+        super(other);
+        center = new Point(other.center);
+        type = other.type;
+    }
+
     @Override
     protected void setBounds() {
+        version++;
         bounds.setBounds(
                 center.x - (type.getWidth() / 2), center.y - (type.getHeight() / 2),
                 type.getWidth(), type.getHeight()
@@ -47,17 +56,31 @@ public class Node extends Element {
     }
 
     public boolean circleContains(Point p) {
-        //radio^2 -> 45^2 = 2025 para un TAD
-        //           22.5^2 = 506.25 para un estado
         //verificar si es circulo dado por esto tiene un punto p
-        return Math.pow(p.x - center.x, 2) + Math.pow(p.y - center.y, 2) <= (type.equals(NodeType.TAD) ? 3600 : 506.25);
+        double r = getRadius();
+        return p.distanceSq(center) <= r * r;
+    }
+
+    /**
+     * Counter increased every time the center or the bounds may have changed, so that edges can tell whether the
+     * geometry they derived from this node is still current.
+     */
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * Radius of the circle of {@link #circleContains(Point)}: 60 for a TAD, 22.5 for a state or anything else.
+     */
+    double getRadius() {
+        return type.equals(NodeType.TAD) ? 60 : 22.5;
     }
 
     @Override
     public void setName(String name) {
-        Canvas c = new Canvas();
+        version++;
         if (type.equals(NodeType.VARIABLE) || type.equals(NodeType.PERIPHERAL)) {
-            int width = c.getFontMetrics(FONT_MED).stringWidth(name);
+            int width = TextMetrics.of(FONT_MED, name).width;
             bounds.setBounds(
                     center.x - (width / 2) - 5, center.y - (type.getHeight() / 2),
                     width + 10, type.getHeight()
@@ -65,17 +88,12 @@ public class Node extends Element {
         }
 
         if (type.equals(NodeType.TEXT)) {
-            String[] lines = name.replace("\t", "    ").split("\n");
-            int longest = 0;
-
-            for (String l : lines) {
-                int lineWidth = c.getFontMetrics(FONT_MED).stringWidth(l);
-                if (lineWidth > longest) longest = lineWidth;
-            }
+            TextMetrics.Text text = TextMetrics.of(FONT_MED, name);
+            String[] lines = text.lines;
+            int longest = text.longest;
 
             if (lines.length > 1) {
-                FontMetrics metrics = c.getFontMetrics(FONT_MED);
-                int height = lines.length * metrics.getAscent() + 11;
+                int height = lines.length * text.ascent + 11;
 
                 bounds.setBounds(
                         center.x - (longest / 2) - 5, center.y - (height / 2),
@@ -94,44 +112,23 @@ public class Node extends Element {
 
     @Override
     public void draw(Graphics2D g) {
-        if (selected) {
-            drawOutline(g);
+        if (isOverview(g)) {
+            drawOverview(g);
+            return;
         }
 
         int x = bounds.x;
         int y = bounds.y;
         int width = bounds.width;
         int height = bounds.height;
-        g.setColor(type.getFill());
 
         switch (type) {
             case TAD:
             case STATE:
-                g.fillOval(x, y, width, height);
-
-                setStrokeAndColor(g);
-                g.setStroke(type.getOuter());
-                g.setColor(type.getOutline());
-                g.drawOval(x, y, width, height);
-
-                if (type.equals(NodeType.TAD)) {
-                    Point bezOrigin = new Point(center.x, center.y - height / 2);
-                    Point bezDest = new Point(center.x + width / 2, center.y);
-                    Point bezControl = new Point(center.x + width / 2 - 5, center.y - height / 2 + 5);
-                    Point moonOrigin = bezierQuadratic(0.15, bezOrigin, bezControl, bezDest);
-                    Point moonDest = bezierQuadratic(0.85, bezOrigin, bezControl, bezDest);
-
-                    g.draw(new QuadCurve2D.Float(
-                            moonOrigin.x, moonOrigin.y, center.x + width / 5, center.y - height / 5,
-                            moonDest.x, moonDest.y
-                    ));
-
-                    g.setFont(FONT_SMALL);
-                    g.drawString(TAD, center.x - 20, center.y - 20);
-                }
-
+                if (!NodeSprites.draw(g, this)) drawRound(g, x, y);
                 break;
             case VARIABLE:
+                if (selected) drawOutline(g);
                 g.setColor(type.getFill());
                 g.fill(bounds);
                 setStrokeAndColor(g);
@@ -139,21 +136,27 @@ public class Node extends Element {
                 g.drawLine(x, y + height, x + width, y + height);
                 break;
             case PERIPHERAL:
+                if (selected) drawOutline(g);
+                g.setColor(type.getFill());
                 g.fill(bounds);
 
                 if (selected) {
-                    g.setStroke(type.getOuter());
+                    setStroke(g, type.getOuter());
                     g.setColor(Color.LIGHT_GRAY);
                 } else {
                     setStrokeAndColor(g);
                 }
                 g.draw(bounds);
                 break;
+            case TEXT:
+                if (selected) drawOutline(g);
+                break;
         }
 
         if (type.equals(NodeType.TEXT)) {
-            String[] lines = name.replace("\t", "    ").split("\n");
-            int lineHeight = g.getFontMetrics(FONT_MED).getAscent();
+            TextMetrics.Text text = TextMetrics.of(FONT_MED, name);
+            String[] lines = text.lines;
+            int lineHeight = text.ascent;
             g.setFont(FONT_MED);
             for (int i = 0; i < lines.length; i++) {
                 g.setColor(Color.BLACK);
@@ -161,24 +164,151 @@ public class Node extends Element {
                 g.drawString(line, bounds.x + 5, bounds.y + (lineHeight * (i + 1)) + 4);
             }
         } else {
-            Font f;
-            if (type.equals(NodeType.STATE)) {
-                f = FONT_LARGE;
-            } else if (type.equals(NodeType.TAD)) {
-                f = FONT_MED_SMALL;
-            } else {
-                f = FONT_MED;
-            }
+            Font f = getNameFont();
             g.setFont(f);
             g.setColor(Color.BLACK);
-            int nameWidth = g.getFontMetrics().stringWidth(name);
+            int nameWidth = TextMetrics.of(f, name).width;
             g.drawString(name, center.x - nameWidth / 2,
                 center.y + f.getSize() / 3);
         }
     }
 
+    /**
+     * Everything of a state or a TAD but its name, with the top left corner of its bounds at {@code x, y}. It is the
+     * same for every node of the type, which is what lets {@link NodeSprites} draw it once for all of them.
+     */
+    void drawRound(Graphics2D g, int x, int y) {
+        int width = type.getWidth();
+        int height = type.getHeight();
+        int centerX = x + width / 2;
+        int centerY = y + height / 2;
+
+        if (selected) {
+            g.setStroke(STROKE_SMALL);
+            g.setColor(Color.GRAY);
+            g.draw(new Rectangle(x, y, width, height));
+        }
+
+        g.setColor(type.getFill());
+        g.fillOval(x, y, width, height);
+
+        setStrokeAndColor(g);
+        g.drawOval(x, y, width, height);
+
+        if (type.equals(NodeType.TAD)) {
+            Point bezOrigin = new Point(centerX, centerY - height / 2);
+            Point bezDest = new Point(centerX + width / 2, centerY);
+            Point bezControl = new Point(centerX + width / 2 - 5, centerY - height / 2 + 5);
+            Point moonOrigin = bezierQuadratic(0.15, bezOrigin, bezControl, bezDest);
+            Point moonDest = bezierQuadratic(0.85, bezOrigin, bezControl, bezDest);
+
+            g.draw(new QuadCurve2D.Float(
+                    moonOrigin.x, moonOrigin.y, centerX + width / 5, centerY - height / 5,
+                    moonDest.x, moonDest.y
+            ));
+
+            g.setFont(FONT_SMALL);
+            g.drawString(TAD, centerX - 20, centerY - 20);
+        }
+    }
+
+    /**
+     * Only the shape, with a thin outline and without the name.
+     */
+    private void drawOverview(Graphics2D g) {
+        g.setStroke(STROKE_SMALL);
+        if (type.equals(NodeType.TEXT)) {
+            g.setColor(selected ? Color.GRAY : Color.LIGHT_GRAY);
+            g.fill(bounds);
+            return;
+        }
+        boolean round = type.equals(NodeType.TAD) || type.equals(NodeType.STATE);
+        g.setColor(type.getFill());
+        if (round) {
+            g.fillOval(bounds.x, bounds.y, bounds.width, bounds.height);
+        } else {
+            g.fill(bounds);
+        }
+        g.setColor(selected ? Color.GRAY : type.getOutline());
+        if (round) {
+            g.drawOval(bounds.x, bounds.y, bounds.width, bounds.height);
+        } else {
+            g.draw(bounds);
+        }
+    }
+
+    private Font getNameFont() {
+        if (type.equals(NodeType.STATE)) {
+            return FONT_LARGE;
+        } else if (type.equals(NodeType.TAD)) {
+            return FONT_MED_SMALL;
+        } else {
+            return FONT_MED;
+        }
+    }
+
+    /**
+     * The bounds, widened to the outline and to the name, which may not fit in the node.
+     */
+    @Override
+    public Rectangle getExtent() {
+        Rectangle extent = new Rectangle(bounds);
+        if (!type.equals(NodeType.TEXT)) {
+            Font f = getNameFont();
+            TextMetrics.Text text = TextMetrics.of(f, name);
+            int baseline = center.y + f.getSize() / 3;
+            extent.add(new Rectangle(center.x - text.width / 2, baseline - text.ascent, text.width,
+                    (int) Math.ceil(text.bounds.getHeight())));
+        }
+        extent.grow(3, 3);
+        return extent;
+    }
+
+    @Override
+    ElementState saveState() {
+        return new State(this);
+    }
+
+    @Override
+    void restoreState(ElementState state) {
+        State s = (State) state;
+        holdName(s.holdName);
+        name = s.name;
+        setCenter(new Point(s.center));
+    }
+
+    private static class State implements ElementState {
+
+        private final String name;
+        private final boolean holdName;
+        private final Point center;
+
+        State(Node n) {
+            name = n.name;
+            holdName = n.nameHold();
+            center = new Point(n.center);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof State)) return false;
+            State other = (State) o;
+            return holdName == other.holdName && Objects.equals(name, other.name) && center.equals(other.center);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, holdName, center);
+        }
+
+        @Override
+        public long footprint() {
+            return OBJECT_SIZE + 3 * REFERENCE_SIZE + POINT_SIZE + ElementState.footprint(name);
+        }
+    }
+
     private void setStrokeAndColor(Graphics2D g) {
-        g.setStroke(type.getOuter());
+        setStroke(g, type.getOuter());
         g.setColor(type.getOutline());
     }
 
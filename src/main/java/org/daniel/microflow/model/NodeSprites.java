@@ -0,0 +1,121 @@
+package org.daniel.microflow.model;
+
+import org.daniel.microflow.view.Drawable;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Images of the states and TADs without their names, which look the same for every node of a type. Each one is drawn
+ * once, at the scale of the device it is painted on and with its rendering hints, and then copied for every node.
+ *
+ * The scale covers both the zoom and the scale of a HiDPI screen, so when either changes the images drawn until then
+ * are no longer used, and the least recently used ones are dropped once there are {@link #CAPACITY} of them.
+ */
+final class NodeSprites {
+
+    static final int CAPACITY = 64;
+
+    /**
+     * Room around the bounds for the outline, half of which is drawn outside of them.
+     */
+    private static final int PAD = 3;
+
+    /**
+     * Zoomed in this much the nodes are few and large, and are drawn as shapes again.
+     */
+    private static final int MAX_SIDE = 512;
+
+    private static final Map<Key, BufferedImage> cache = new LinkedHashMap<Key, BufferedImage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, BufferedImage> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    private NodeSprites() { }
+
+    /**
+     * Copies the image of {@code node} where it would be drawn.
+     *
+     * @return false if it can't be drawn from an image, as when printing or if {@code g} is rotated
+     */
+    static boolean draw(Graphics2D g, Node node) {
+        AffineTransform t = g.getTransform();
+        double scale = t.getScaleX();
+        if (t.getShearX() != 0 || t.getShearY() != 0 || scale != t.getScaleY() || scale <= 0) return false;
+        GraphicsConfiguration gc = g.getDeviceConfiguration();
+        if (gc.getDevice().getType() == GraphicsDevice.TYPE_PRINTER) return false;
+        NodeType type = node.getType();
+        int width = (int) Math.ceil((type.getWidth() + 2 * PAD) * scale);
+        int height = (int) Math.ceil((type.getHeight() + 2 * PAD) * scale);
+        if (width > MAX_SIDE || height > MAX_SIDE) return false;
+
+        RenderingHints hints = g.getRenderingHints();
+        Key key = new Key(type, node.isSelected(), scale, hints.get(RenderingHints.KEY_ANTIALIASING),
+                hints.get(RenderingHints.KEY_TEXT_ANTIALIASING), hints.get(Drawable.KEY_INTERACTIVE));
+        BufferedImage sprite;
+        synchronized (cache) {
+            sprite = cache.get(key);
+        }
+        if (sprite == null) {
+            sprite = gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+            Graphics2D sg = sprite.createGraphics();
+            sg.setRenderingHints(hints);
+            sg.scale(scale, scale);
+            node.drawRound(sg, PAD, PAD);
+            sg.dispose();
+            synchronized (cache) {
+                cache.put(key, sprite);
+            }
+        }
+
+        // Copied on whole device pixels, which at most moves it by half a pixel when zoomed
+        Rectangle bounds = node.bounds;
+        long x = Math.round(t.getTranslateX() + (bounds.x - PAD) * scale);
+        long y = Math.round(t.getTranslateY() + (bounds.y - PAD) * scale);
+        g.setTransform(AffineTransform.getTranslateInstance(x, y));
+        g.drawImage(sprite, 0, 0, null);
+        g.setTransform(t);
+        return true;
+    }
+
+    private static final class Key {
+
+        private final NodeType type;
+        private final boolean selected;
+        private final double scale;
+        private final Object antialiasing;
+        private final Object textAntialiasing;
+        private final Object interactive;
+
+        Key(NodeType type, boolean selected, double scale, Object antialiasing, Object textAntialiasing,
+            Object interactive) {
+            this.type = type;
+            this.selected = selected;
+            this.scale = scale;
+            this.antialiasing = antialiasing;
+            this.textAntialiasing = textAntialiasing;
+            this.interactive = interactive;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return type == other.type && selected == other.selected && scale == other.scale
+                    && Objects.equals(antialiasing, other.antialiasing)
+                    && Objects.equals(textAntialiasing, other.textAntialiasing)
+                    && Objects.equals(interactive, other.interactive);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, selected, scale, antialiasing, textAntialiasing, interactive);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package org.daniel.microflow.model;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * PNG images of a diagram, drawn and written in horizontal strips so that only a few strips are ever in memory,
+ * whatever the size of the image.
+ *
+ * The strips are drawn and compressed in parallel. Each one is compressed on its own and ends on a byte boundary, so
+ * the compressed strips written one after the other, with the checksums of the strips combined, make a single valid
+ * zlib stream for the image data.
+ */
+public class PngFormat {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    /**
+     * Header of the zlib stream: deflate with a 32K window and the default compression level.
+     */
+    private static final byte[] ZLIB_HEADER = {0x78, (byte) 0x9C};
+
+    /**
+     * Largest strip, in pixels. A strip is at least one row, however wide.
+     */
+    private static final int STRIP_PIXELS = 1 << 20;
+    private static final int MAX_STRIP_ROWS = 256;
+
+    /**
+     * Resolution of the image at a scale of 1, the one of a screen showing the diagram at its actual size.
+     */
+    public static final int SCREEN_DPI = 96;
+
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int FILTER_UP = 2;
+
+    private PngFormat() { }
+
+    /**
+     * @param area       part of the diagram in the image
+     * @param scale      pixels of the image per pixel of the diagram
+     * @param background color of the image where there is nothing
+     */
+    static void write(Graph graph, Path file, Rectangle area, double scale, Color background,
+                      ProgressListener progress) throws IOException {
+        int width = (int) Math.ceil(area.width * scale);
+        int height = (int) Math.ceil(area.height * scale);
+        if (width <= 0 || height <= 0 || 1L + 3L * width > Integer.MAX_VALUE) {
+            throw new IOException("Can't make an image of " + width + "x" + height + " pixels");
+        }
+        int rows = Math.max(1, Math.min(MAX_STRIP_ROWS, STRIP_PIXELS / width));
+        int strips = (height + rows - 1) / rows;
+
+        List<Element> elements = new ArrayList<>(graph.getEdges());
+        elements.addAll(graph.getNodes());
+
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "Microflow PNG");
+            t.setDaemon(true);
+            return t;
+        });
+        Deque<Future<Strip>> pending = new ArrayDeque<>();
+        try (FileOutputStream fileOut = new FileOutputStream(file.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16))) {
+            out.write(SIGNATURE);
+            writeHeader(out, width, height);
+            writeResolution(out, scale);
+
+            long checksum = 1;
+            int next = 0;
+            for (int i = 0; i < strips; i++) {
+                // A few strips ahead of the one being written, no more, to keep the memory bounded
+                while (next < strips && pending.size() < 2 * threads) {
+                    int top = next * rows;
+                    int stripRows = Math.min(rows, height - top);
+                    boolean last = next == strips - 1;
+                    pending.add(workers.submit(() ->
+                            drawStrip(elements, area, scale, background, width, top, stripRows, last)));
+                    next++;
+                }
+                Strip strip = get(pending.poll());
+                byte[] data = strip.compressed;
+                if (i == 0) {
+                    byte[] first = new byte[ZLIB_HEADER.length + data.length];
+                    System.arraycopy(ZLIB_HEADER, 0, first, 0, ZLIB_HEADER.length);
+                    System.arraycopy(data, 0, first, ZLIB_HEADER.length, data.length);
+                    data = first;
+                }
+                writeChunk(out, "IDAT", data);
+                checksum = combineAdler32(checksum, strip.adler32, strip.length);
+                progress.progress(i + 1, strips);
+            }
+            writeChunk(out, "IDAT", new byte[]{
+                    (byte) (checksum >>> 24), (byte) (checksum >>> 16), (byte) (checksum >>> 8), (byte) checksum});
+            writeChunk(out, "IEND", new byte[0]);
+            out.flush();
+            fileOut.getFD().sync();
+        } finally {
+            for (Future<Strip> f : pending) f.cancel(true);
+            workers.shutdownNow();
+        }
+    }
+
+    private static Strip get(Future<Strip> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Cancelled");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Draws the rows from {@code top} of the image, filters and compresses them.
+     */
+    private static Strip drawStrip(List<Element> elements, Rectangle area, double scale, Color background, int width,
+                                   int top, int rows, boolean last) {
+        BufferedImage image = new BufferedImage(width, rows, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(background);
+        g.fillRect(0, 0, width, rows);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.translate(0, -top);
+        g.scale(scale, scale);
+        g.translate(-area.x, -area.y);
+
+        // Only what reaches the strip, one pixel of the diagram around it for the antialiasing
+        Rectangle shown = new Rectangle(area.x, (int) Math.floor(area.y + top / scale) - 1,
+                area.width, (int) Math.ceil(rows / scale) + 2);
+        for (Element e : elements) {
+            if (reaches(e, shown)) e.draw(g);
+        }
+        g.dispose();
+
+        byte[] raw = filter(((DataBufferInt) image.getRaster().getDataBuffer()).getData(), width, rows);
+        Adler32 adler = new Adler32();
+        adler.update(raw, 0, raw.length);
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 8 + 64);
+        byte[] buffer = new byte[1 << 16];
+        deflater.setInput(raw);
+        if (last) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            }
+        } else {
+            // Sync flush: ends on a byte boundary without ending the stream, for the next strip to follow
+            int n;
+            do {
+                n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                compressed.write(buffer, 0, n);
+            } while (n == buffer.length);
+        }
+        deflater.end();
+        return new Strip(compressed.toByteArray(), adler.getValue(), raw.length);
+    }
+
+    /**
+     * True if {@code e} draws something in {@code area}. Edges draw their action too.
+     */
+    private static boolean reaches(Element e, Rectangle area) {
+        if (e.getExtent().intersects(area)) return true;
+        Action action = e instanceof Edge ? ((Edge) e).getAction() : null;
+        return action != null && action.getExtent().intersects(area);
+    }
+
+    /**
+     * Rows of RGB bytes, each after the filter that leaves the smallest values for it, among none, sub and up. The
+     * first row of a strip can't be filtered with the row above, which is in another strip.
+     */
+    private static byte[] filter(int[] pixels, int width, int rows) {
+        int stride = 1 + 3 * width;
+        byte[] raw = new byte[stride * rows];
+        byte[] previous = null;
+        byte[] row = new byte[3 * width];
+        byte[] sub = new byte[3 * width];
+        byte[] up = new byte[3 * width];
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0, i = 0, p = y * width; x < width; x++, p++) {
+                int rgb = pixels[p];
+                row[i++] = (byte) (rgb >> 16);
+                row[i++] = (byte) (rgb >> 8);
+                row[i++] = (byte) rgb;
+            }
+            long noneCost = 0;
+            long subCost = 0;
+            long upCost = 0;
+            for (int i = 0; i < row.length; i++) {
+                sub[i] = (byte) (row[i] - (i < 3 ? 0 : row[i - 3]));
+                noneCost += Math.abs(row[i]);
+                subCost += Math.abs(sub[i]);
+                if (previous != null) {
+                    up[i] = (byte) (row[i] - previous[i]);
+                    upCost += Math.abs(up[i]);
+                }
+            }
+            int filter = FILTER_NONE;
+            byte[] chosen = row;
+            if (subCost < noneCost) {
+                filter = FILTER_SUB;
+                chosen = sub;
+                noneCost = subCost;
+            }
+            if (previous != null && upCost < noneCost) {
+                filter = FILTER_UP;
+                chosen = up;
+            }
+            raw[y * stride] = (byte) filter;
+            System.arraycopy(chosen, 0, raw, y * stride + 1, chosen.length);
+
+            byte[] swap = previous == null ? new byte[row.length] : previous;
+            previous = row;
+            row = swap;
+        }
+        return raw;
+    }
+
+    /**
+     * Checksum of two pieces of data one after the other from the checksums of each, as zlib's adler32_combine.
+     */
+    static long combineAdler32(long adler1, long adler2, long length2) {
+        final long base = 65521;
+        long remainder = length2 % base;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (remainder * sum1) % base;
+        sum1 += (adler2 & 0xFFFF) + base - 1;
+        sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + base - remainder;
+        if (sum1 >= base) sum1 -= base;
+        if (sum1 >= base) sum1 -= base;
+        if (sum2 >= (base << 1)) sum2 -= (base << 1);
+        if (sum2 >= base) sum2 -= base;
+        return sum1 | (sum2 << 16);
+    }
+
+    private static void writeHeader(DataOutputStream out, int width, int height) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(13);
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(width);
+        data.writeInt(height);
+        data.writeByte(8);  // bits per channel
+        data.writeByte(2);  // RGB
+        data.writeByte(0);  // deflate
+        data.writeByte(0);  // adaptive filters
+        data.writeByte(0);  // not interlaced
+        writeChunk(out, "IHDR", bytes.toByteArray());
+    }
+
+    /**
+     * Tells image viewers and printers the resolution, so that at a scale of 2 the image prints as large as at 1.
+     */
+    private static void writeResolution(DataOutputStream out, double scale) throws IOException {
+        long perMetre = Math.round(SCREEN_DPI * scale / 0.0254);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(9);
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt((int) perMetre);
+        data.writeInt((int) perMetre);
+        data.writeByte(1);  // metres
+        writeChunk(out, "pHYs", bytes.toByteArray());
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data) throws IOException {
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data);
+        out.writeInt(data.length);
+        out.write(name);
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static final class Strip {
+
+        final byte[] compressed;
+        final long adler32;
+        final long length;
+
+        Strip(byte[] compressed, long adler32, long length) {
+            this.compressed = compressed;
+            this.adler32 = adler32;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.daniel.microflow.model;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reports the number of bytes read so far out of the length of the stream.
+ */
+class ProgressInputStream extends FilterInputStream {
+
+    private final ProgressListener listener;
+    private final long length;
+    private long read;
+
+    ProgressInputStream(InputStream in, long length, ProgressListener listener) {
+        super(in);
+        this.length = length;
+        this.listener = listener;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) advance(1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) advance(n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        advance(skipped);
+        return skipped;
+    }
+
+    private void advance(long n) throws IOException {
+        read += n;
+        listener.progress(read, length);
+    }
+}
@@ -0,0 +1,19 @@
+package org.daniel.microflow.model;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Receives the progress of a long operation, such as loading or saving a file. Throwing from {@link #progress} stops
+ * the operation.
+ */
+public interface ProgressListener {
+
+    ProgressListener NONE = (done, total) -> { };
+
+    /**
+     * @param done  amount of work done, in any unit
+     * @param total amount of work to do, in the same unit
+     * @throws InterruptedIOException to cancel the operation
+     */
+    void progress(long done, long total) throws InterruptedIOException;
+}
@@ -0,0 +1,141 @@
+package org.daniel.microflow.model;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongConsumer;
+
+/**
+ * Uniform grid over the extents of the elements of a {@link Graph}. The canvas has no fixed size, so a hashed grid
+ * is used instead of a tree: an element is stored in every cell its extent overlaps and a point query only has to
+ * look at the elements of a single cell.
+ *
+ * It also keeps the damage, the area covered by every extent inserted, removed or updated since it was last taken,
+ * which is what has to be painted again.
+ */
+class SpatialIndex {
+
+    private static final int CELL_SIZE = 128;
+
+    private final Map<Long, List<Element>> cells;
+    private final Map<Element, Rectangle> extents;
+    private Rectangle damage;
+
+    SpatialIndex() {
+        cells = new HashMap<>();
+        extents = new IdentityHashMap<>();
+    }
+
+    void insert(Element e, Rectangle extent) {
+        Rectangle r = new Rectangle(extent);
+        extents.put(e, r);
+        damage(r);
+        forEachCell(r, key -> cells.computeIfAbsent(key, k -> new ArrayList<>(4)).add(e));
+    }
+
+    void remove(Element e) {
+        Rectangle r = extents.remove(e);
+        if (r == null) return;
+        damage(r);
+        forEachCell(r, key -> {
+            List<Element> cell = cells.get(key);
+            if (cell != null) {
+                cell.remove(e);
+                if (cell.isEmpty()) cells.remove(key);
+            }
+        });
+    }
+
+    void update(Element e, Rectangle extent) {
+        Rectangle old = extents.get(e);
+        if (old != null && old.equals(extent)) {
+            // Still in the same cells, but drawn differently
+            damage(old);
+            return;
+        }
+        remove(e);
+        insert(e, extent);
+    }
+
+    boolean contains(Element e) {
+        return extents.containsKey(e);
+    }
+
+    /**
+     * Adds to {@code out} every element whose extent may contain {@code p}.
+     */
+    void query(Point p, Collection<Element> out) {
+        List<Element> cell = cells.get(key(Math.floorDiv(p.x, CELL_SIZE), Math.floorDiv(p.y, CELL_SIZE)));
+        if (cell == null) return;
+        for (Element e : cell) {
+            if (extents.get(e).contains(p)) out.add(e);
+        }
+    }
+
+    /**
+     * Adds to {@code out} every element whose extent intersects {@code r}, once each.
+     */
+    void query(Rectangle r, Collection<Element> out) {
+        long cellCount = (Math.floorDiv(r.x + r.width, CELL_SIZE) - Math.floorDiv(r.x, CELL_SIZE) + 1L)
+                * (Math.floorDiv(r.y + r.height, CELL_SIZE) - Math.floorDiv(r.y, CELL_SIZE) + 1L);
+        if (cellCount > cells.size()) {
+            // Larger than the canvas itself, as when everything is painted
+            for (Map.Entry<Element, Rectangle> entry : extents.entrySet()) {
+                if (entry.getValue().intersects(r)) out.add(entry.getKey());
+            }
+            return;
+        }
+        Set<Element> found = Collections.newSetFromMap(new IdentityHashMap<>());
+        forEachCell(r, key -> {
+            List<Element> cell = cells.get(key);
+            if (cell == null) return;
+            for (Element e : cell) {
+                if (extents.get(e).intersects(r) && found.add(e)) out.add(e);
+            }
+        });
+    }
+
+    /**
+     * Returns the damage and starts a new one.
+     *
+     * @return the area to paint again, or null if nothing changed
+     */
+    Rectangle takeDamage() {
+        Rectangle r = damage;
+        damage = null;
+        return r;
+    }
+
+    private void damage(Rectangle r) {
+        if (damage == null) {
+            damage = new Rectangle(r);
+        } else {
+            damage.add(r);
+        }
+    }
+
+    void clear() {
+        cells.clear();
+        extents.clear();
+    }
+
+    private void forEachCell(Rectangle r, LongConsumer consumer) {
+        int x0 = Math.floorDiv(r.x, CELL_SIZE), x1 = Math.floorDiv(r.x + r.width, CELL_SIZE);
+        int y0 = Math.floorDiv(r.y, CELL_SIZE), y1 = Math.floorDiv(r.y + r.height, CELL_SIZE);
+        for (int x = x0; x <= x1; x++) {
+            for (int y = y0; y <= y1; y++) {
+                consumer.accept(key(x, y));
+            }
+        }
+    }
+
+    private static long key(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,92 @@
+package org.daniel.microflow.model;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Measures of the texts drawn by the elements, shared by every diagram. Names are measured when an element is laid out
+ * and every time it is painted, but they rarely change, so the measures are kept by font and text, and the least
+ * recently used ones are dropped once there are {@link #CAPACITY} of them.
+ *
+ * Texts are measured as a component would, with the identity transform and without antialiasing, wherever they end up
+ * drawn, so that the layout of a diagram doesn't depend on where it is painted.
+ */
+final class TextMetrics {
+
+    static final int CAPACITY = 2048;
+
+    private static final Component COMPONENT = new Canvas();
+
+    private static final Map<Key, Text> cache = new LinkedHashMap<Key, Text>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Text> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    private TextMetrics() { }
+
+    static Text of(Font font, String text) {
+        Key key = new Key(font, text);
+        synchronized (cache) {
+            Text t = cache.get(key);
+            if (t != null) return t;
+        }
+        Text t = new Text(COMPONENT.getFontMetrics(font), text);
+        synchronized (cache) {
+            cache.put(key, t);
+        }
+        return t;
+    }
+
+    /**
+     * Width, bounds and lines of a text. Tabs count as four spaces in the lines.
+     */
+    static final class Text {
+
+        final int width;
+        final int ascent;
+        final Rectangle2D bounds;
+        final String[] lines;
+        final int longest;
+
+        private Text(FontMetrics metrics, String text) {
+            width = metrics.stringWidth(text);
+            ascent = metrics.getAscent();
+            bounds = metrics.getStringBounds(text, null);
+            lines = text.replace("\t", "    ").split("\n");
+            int max = 0;
+            for (String l : lines) {
+                max = Math.max(max, metrics.stringWidth(l));
+            }
+            longest = max;
+        }
+    }
+
+    private static final class Key {
+
+        private final Font font;
+        private final String text;
+        private final int hash;
+
+        Key(Font font, String text) {
+            this.font = font;
+            this.text = text;
+            hash = 31 * font.hashCode() + text.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return hash == other.hash && text.equals(other.text) && font.equals(other.font);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package org.daniel.microflow.model;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Undo and redo stacks of {@link Edit}s of a single graph.
+ *
+ * The memory used by the history is bounded twice: by a budget for each graph and by a global budget shared by every
+ * open graph. When a budget is exceeded the oldest edits are forgotten first. Both can be set with the
+ * {@code microflow.undo.tabBudget} and {@code microflow.undo.globalBudget} system properties (in bytes). Only the
+ * histories that were {@link #register() registered} count in the global budget.
+ *
+ * Graphs are created on background threads while loading, so every access to the registered histories is
+ * synchronized on them.
+ */
+class UndoHistory {
+
+    private static final List<WeakReference<UndoHistory>> histories = new ArrayList<>();
+
+    private static long tabBudget = Long.getLong("microflow.undo.tabBudget", 16L * 1024 * 1024);
+    private static long globalBudget = Long.getLong("microflow.undo.globalBudget", 64L * 1024 * 1024);
+
+    private final Deque<Edit> undo;
+    private final Deque<Edit> redo;
+    private long footprint;
+
+    UndoHistory() {
+        undo = new LinkedList<>();
+        redo = new LinkedList<>();
+    }
+
+    /**
+     * Counts this history in the global budget, until it is {@link #unregister() unregistered} or its graph is garbage
+     * collected.
+     */
+    void register() {
+        synchronized (histories) {
+            histories.add(new WeakReference<>(this));
+        }
+        enforceGlobalBudget();
+    }
+
+    void unregister() {
+        synchronized (histories) {
+            histories.removeIf(ref -> {
+                UndoHistory h = ref.get();
+                return h == null || h == this;
+            });
+        }
+    }
+
+    void push(Edit e) {
+        undo.push(e);
+        footprint += e.getFootprint();
+        for (Edit r : redo) footprint -= r.getFootprint();
+        redo.clear();
+
+        while (footprint > tabBudget) {
+            if (!evictOldest()) break;
+        }
+        enforceGlobalBudget();
+    }
+
+    Edit undo() {
+        if (undo.isEmpty()) return null;
+        Edit e = undo.pop();
+        redo.push(e);
+        return e;
+    }
+
+    Edit redo() {
+        if (redo.isEmpty()) return null;
+        Edit e = redo.pop();
+        undo.push(e);
+        return e;
+    }
+
+    boolean canUndo() {
+        return !undo.isEmpty();
+    }
+
+    boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    void clear() {
+        undo.clear();
+        redo.clear();
+        footprint = 0;
+    }
+
+    long getFootprint() {
+        return footprint;
+    }
+
+    /**
+     * Forgets the oldest edit that can still be undone, or the furthest one that can be redone if there is none.
+     */
+    private boolean evictOldest() {
+        Edit e = undo.pollLast();
+        if (e == null) e = redo.pollLast();
+        if (e == null) return false;
+        footprint -= e.getFootprint();
+        return true;
+    }
+
+    private Edit oldest() {
+        return undo.isEmpty() ? redo.peekLast() : undo.peekLast();
+    }
+
+    private static void enforceGlobalBudget() {
+        synchronized (histories) {
+            evictGlobally();
+        }
+    }
+
+    private static void evictGlobally() {
+        while (true) {
+            long total = 0;
+            UndoHistory victim = null;
+            for (Iterator<WeakReference<UndoHistory>> i = histories.iterator(); i.hasNext(); ) {
+                UndoHistory h = i.next().get();
+                if (h == null) {
+                    i.remove();
+                    continue;
+                }
+                total += h.footprint;
+                Edit oldest = h.oldest();
+                if (oldest != null && (victim == null || oldest.getSequence() < victim.oldest().getSequence())) {
+                    victim = h;
+                }
+            }
+            if (total <= globalBudget || victim == null) return;
+            victim.evictOldest();
+        }
+    }
+
+    static long getGlobalFootprint() {
+        long total = 0;
+        synchronized (histories) {
+            for (WeakReference<UndoHistory> ref : histories) {
+                UndoHistory h = ref.get();
+                if (h != null) total += h.footprint;
+            }
+        }
+        return total;
+    }
+
+    static void setTabBudget(long bytes) {
+        tabBudget = bytes;
+    }
+
+    static void setGlobalBudget(long bytes) {
+        globalBudget = bytes;
+    }
+}
@@ -14,6 +14,8 @@ public class DiagramView extends JPanel {
     private final ToolBar jpToolBar;
     private final MenuBar jmbMenuBar;
     private final FunctionsDialogPanel functionsDialogPanel;
+    private final MiniMap miniMap;
+    private final PngOptionsPanel pngOptionsPanel;
 
     public DiagramView(OuterView parent, Graph graph) {
         this.parent = parent;
@@ -31,12 +33,18 @@ public class DiagramView extends JPanel {
         scrollPane.getVerticalScrollBar().setUnitIncrement(16);
         content.add(scrollPane, BorderLayout.CENTER);
 
+        miniMap = new MiniMap(graph, drawPanel, scrollPane.getViewport());
+        JPanel east = new JPanel(new BorderLayout());
+        east.add(miniMap, BorderLayout.NORTH);
+        content.add(east, BorderLayout.EAST);
+
         jmbMenuBar = new MenuBar(this, jpToolBar);
         north.add(jmbMenuBar, BorderLayout.NORTH);
 
         content.add(north, BorderLayout.NORTH);
 
         functionsDialogPanel = new FunctionsDialogPanel();
+        pngOptionsPanel = new PngOptionsPanel();
 
         this.setVisible(true);
     }
@@ -59,6 +67,10 @@ public class DiagramView extends JPanel {
         return drawPanel;
     }
 
+    public MiniMap getMiniMap() {
+        return miniMap;
+    }
+
     public String multiLineInput(String message, String title, String initial) {
         JPanel panel = new JPanel() {
             @Override
@@ -91,8 +103,8 @@ public class DiagramView extends JPanel {
         north.add(new JLabel("Enter the desired size (in pixels)"));
         panel.add(north, BorderLayout.NORTH);
         JPanel grid = new JPanel(new GridLayout(2, 2));
-        JTextField width = new JTextField(String.valueOf(drawPanel.getSize().width));
-        JTextField height = new JTextField(String.valueOf(drawPanel.getSize().height));
+        JTextField width = new JTextField(String.valueOf(drawPanel.getDiagramSize().width));
+        JTextField height = new JTextField(String.valueOf(drawPanel.getDiagramSize().height));
         width.setColumns(10);
         height.setColumns(10);
         grid.add(new JLabel("Width:"));
@@ -121,6 +133,16 @@ public class DiagramView extends JPanel {
         return null;
     }
 
+    /**
+     * Asks how to export the diagram as a PNG. The options are kept for the next export.
+     *
+     * @return the options, or null if cancelled
+     */
+    public PngOptionsPanel pngOptionsDialog() {
+        int res = JOptionPane.showConfirmDialog(this, pngOptionsPanel, "Export PNG", JOptionPane.OK_CANCEL_OPTION);
+        return res == JOptionPane.OK_OPTION ? pngOptionsPanel : null;
+    }
+
     public OuterView getMainView() {
         return parent;
     }
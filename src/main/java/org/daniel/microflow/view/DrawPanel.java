@@ -1,20 +1,67 @@
 package org.daniel.microflow.view;
 
+import org.daniel.microflow.model.Element;
 import org.daniel.microflow.model.Graph;
 
 import javax.swing.*;
+import javax.swing.event.ChangeListener;
 import java.awt.*;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.QuadCurve2D;
+import java.awt.image.BufferedImage;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * Canvas of a diagram. The diagram is drawn scaled by the zoom, and the mouse events its listeners get are already in
+ * the coordinates of the diagram, so they don't have to know about the zoom. It is panned by its scroll pane, with the
+ * scroll bars, the mouse wheel or dragging with the middle button.
+ */
 public class DrawPanel extends JPanel {
 
     public static final int CURVE = 0;
     public static final int RECT = 1;
     public static final int NONE = 2;
 
+    public static final double MIN_SCALE = 0.05;
+    public static final double MAX_SCALE = 4;
+    private static final double ZOOM_STEP = 1.25;
+
+    /**
+     * Below this scale the elements are too small to read and are drawn simplified and without antialiasing.
+     */
+    public static final double OVERVIEW_SCALE = 0.5;
+
+    /**
+     * Side of the tiles of the panel the diagram is cached in, and the most pixels all the tiles may take together.
+     * Only the panel that is showing keeps them, the ones of the other tabs are dropped when they are hidden.
+     */
+    private static final int TILE_SIZE = 256;
+    private static final int TILE_PIXELS = 16 * 1024 * 1024;
+
+    /**
+     * While the diagram is dragged, scrolled or zoomed, it is painted without antialiasing and with thin strokes if
+     * painting what is shown at full quality took at least {@code microflow.render.roughAfterMillis}, and at full
+     * quality again once nothing moved for {@code microflow.render.idleMillis}. With {@code microflow.render.stats} the
+     * paint times are printed every time it goes idle.
+     */
+    private static final int ROUGH_AFTER_MILLIS = Integer.getInteger("microflow.render.roughAfterMillis", 10);
+    private static final int IDLE_MILLIS = Integer.getInteger("microflow.render.idleMillis", 200);
+    private static final boolean LOG_STATS = Boolean.getBoolean("microflow.render.stats");
+
     private Point start;
     private Point pivot;
     private Point end;
@@ -24,31 +71,305 @@ public class DrawPanel extends JPanel {
     private final Graph graph;
     private final ComponentListener resizeListener;
     private Dimension dim;
+    private double scale;
+    private Point panFrom;
+
+    /*
+     * While something is dragged, everything else is painted once into the backdrop, an image of the visible part of
+     * the panel, and each frame only copies it and draws what moves on top.
+     */
+    private Set<Element> moving;
+    private BufferedImage backdrop;
+    private Rectangle backdropArea;
+    private double backdropScale;
+    private double backdropZoom;
+
+    /*
+     * Tiles of the panel as painted last, by column and row, the least recently used first. Whatever isn't moving is
+     * copied from them, so scrolling over a large diagram only paints the tiles it hasn't shown yet. Asking to repaint
+     * an area is how the panel is told that it changed, which drops the tiles it touches.
+     */
+    private final Map<Long, BufferedImage> tiles;
+    private double tilesScale;
+    private double tilesZoom;
+
+    /*
+     * Interactive until the idle timer goes off. The tiles painted rough in the meantime are painted again then.
+     */
+    private boolean interactive;
+    private boolean roughPainted;
+    private final Set<Long> roughTiles = new HashSet<>();
+    private final Timer idle;
+    private final ChangeListener scrolled = e -> interact();
+    private final PaintStats stats = new PaintStats();
+    private long viewPaintNanos;
 
     public DrawPanel(Graph graph) {
         super();
         setBackground(Color.decode("#FEFEFE"));
         type = NONE;
+        scale = 1;
         bounds = new Rectangle(0, 0, getWidth() - 100, getHeight() - 100);
 
         resizeListener = new ComponentAdapter() {
             @Override
             public void componentResized(ComponentEvent e) {
-                bounds.setBounds(0, 0, getWidth() - 100, getHeight() - 100);
+                bounds.setBounds(0, 0, (int) (getWidth() / scale) - 100, (int) (getHeight() / scale) - 100);
             }
         };
 
         addComponentListener(resizeListener);
+        addMouseWheelListener(this::wheelMoved);
         this.graph = graph;
         dim = new Dimension();
+        tiles = new LinkedHashMap<Long, BufferedImage>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+                long side = Math.max(1, (long) Math.ceil(TILE_SIZE * tilesScale));
+                return size() > Math.max(1, TILE_PIXELS / (side * side));
+            }
+        };
+        idle = new Timer(IDLE_MILLIS, e -> idle());
+        idle.setRepeats(false);
+        addHierarchyListener(e -> {
+            if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0 && !isShowing()) dropImages();
+        });
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        if (getParent() instanceof JViewport) {
+            JViewport viewport = (JViewport) getParent();
+            viewport.removeChangeListener(scrolled);
+            viewport.addChangeListener(scrolled);
+        }
+    }
+
+    @Override
+    public void removeNotify() {
+        super.removeNotify();
+        dropImages();
+    }
+
+    /**
+     * Frees the tiles and the backdrop, which are painted again the next time the panel is shown.
+     */
+    private void dropImages() {
+        tiles.clear();
+        roughTiles.clear();
+        backdrop = null;
     }
 
     @Override
     protected void paintComponent(Graphics g0) {
-        super.paintComponent(g0);
-        Graphics2D g = (Graphics2D) g0;
+        long start = System.nanoTime();
+        boolean rough = interactive && viewPaintNanos >= ROUGH_AFTER_MILLIS * 1_000_000L;
+        Rectangle clip = g0.getClipBounds();
+        paintClip((Graphics2D) g0, rough);
+
+        long nanos = System.nanoTime() - start;
+        stats.record(nanos, rough);
+        if (rough) {
+            roughPainted = true;
+        } else {
+            // Only the paints of about what is shown tell how long a frame takes
+            Rectangle visible = getViewArea();
+            if (clip == null || 2L * clip.width * clip.height >= (long) visible.width * visible.height) {
+                viewPaintNanos = nanos;
+            }
+        }
+    }
+
+    private void paintClip(Graphics2D g, boolean rough) {
+        if (moving != null && paintOverBackdrop(g, rough)) return;
+
+        super.paintComponent(g);
+        if (paintTiles(g, rough)) {
+            g.scale(scale, scale);
+            setQuality(g, rough);
+            paintLine(g);
+            return;
+        }
+
+        g.scale(scale, scale);
+        setQuality(g, rough);
+        paintLine(g);
+
+        // Only what can be seen through the clip, which is small when a single element changed
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            for (Drawable d : graph.getEdges()) {
+                d.draw(g);
+            }
+
+            for (Drawable d : graph.getNodes()) {
+                d.draw(g);
+            }
+        } else {
+            for (Drawable d : graph.getDrawablesIn(clip)) {
+                d.draw(g);
+            }
+        }
+    }
+
+    /**
+     * Paints the whole diagram at its actual size, whatever the zoom, as when it is exported or printed.
+     */
+    public void paintDiagram(Graphics2D g) {
+        Dimension size = getDiagramSize();
+        g.setColor(getBackground());
+        g.fillRect(0, 0, size.width, size.height);
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        for (Drawable d : graph.getEdges()) {
+            d.draw(g);
+        }
+        for (Drawable d : graph.getNodes()) {
+            d.draw(g);
+        }
+    }
+
+    /**
+     * Copies the tiles under the clip, painting the ones not cached.
+     *
+     * @return false if the tiles can't be used for this paint, which is then done as usual
+     */
+    private boolean paintTiles(Graphics2D g, boolean rough) {
+        Rectangle clip = g.getClipBounds();
+        double device = getDeviceScale(g);
+        // A tile has to start on a device pixel to be copied as it was painted
+        if (clip == null || device <= 0 || TILE_SIZE * device != Math.rint(TILE_SIZE * device)) return false;
+        if (device != tilesScale || scale != tilesZoom) {
+            tiles.clear();
+            tilesScale = device;
+            tilesZoom = scale;
+        }
+
+        int fromColumn = Math.floorDiv(clip.x, TILE_SIZE);
+        int toColumn = Math.floorDiv(clip.x + clip.width - 1, TILE_SIZE);
+        int fromRow = Math.floorDiv(clip.y, TILE_SIZE);
+        int toRow = Math.floorDiv(clip.y + clip.height - 1, TILE_SIZE);
+        for (int row = fromRow; row <= toRow; row++) {
+            for (int column = fromColumn; column <= toColumn; column++) {
+                Long key = tileKey(column, row);
+                BufferedImage tile = tiles.get(key);
+                if (tile == null) {
+                    tile = paintTile(column, row, device, rough);
+                    tiles.put(key, tile);
+                    if (rough) roughTiles.add(key);
+                }
+                int x = column * TILE_SIZE;
+                int y = row * TILE_SIZE;
+                g.drawImage(tile, x, y, x + TILE_SIZE, y + TILE_SIZE, 0, 0, tile.getWidth(), tile.getHeight(), null);
+            }
+        }
+        return true;
+    }
+
+    private BufferedImage paintTile(int column, int row, double device, boolean rough) {
+        int side = (int) Math.rint(TILE_SIZE * device);
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        BufferedImage tile = gc == null
+                ? new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB)
+                : gc.createCompatibleImage(side, side);
 
+        Graphics2D g = tile.createGraphics();
+        g.setColor(getBackground());
+        g.fillRect(0, 0, side, side);
+        g.scale(device, device);
+        g.translate(-column * TILE_SIZE, -row * TILE_SIZE);
+        g.clipRect(column * TILE_SIZE, row * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+        g.scale(scale, scale);
+        setQuality(g, rough);
+        for (Element e : graph.getDrawablesIn(g.getClipBounds())) {
+            e.draw(g);
+        }
+        g.dispose();
+        return tile;
+    }
+
+    private static Long tileKey(int column, int row) {
+        return ((long) column << 32) | (row & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return the scale from the panel to the device, or 0 if the transform is not a plain scale and translation
+     */
+    private static double getDeviceScale(Graphics2D g) {
+        AffineTransform t = g.getTransform();
+        if (t.getShearX() != 0 || t.getShearY() != 0 || t.getScaleX() != t.getScaleY()) return 0;
+        return t.getScaleX();
+    }
+
+    /**
+     * Drops the cached tiles under the area before it is painted again.
+     */
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height) {
+        if (tiles != null && !tiles.isEmpty()) {
+            int fromColumn = Math.floorDiv(x - 1, TILE_SIZE);
+            int toColumn = Math.floorDiv(x + width, TILE_SIZE);
+            int fromRow = Math.floorDiv(y - 1, TILE_SIZE);
+            int toRow = Math.floorDiv(y + height, TILE_SIZE);
+            if ((long) (toColumn - fromColumn + 1) * (toRow - fromRow + 1) >= tiles.size()) {
+                for (Iterator<Long> it = tiles.keySet().iterator(); it.hasNext(); ) {
+                    long key = it.next();
+                    int column = (int) (key >> 32);
+                    int row = (int) key;
+                    if (column >= fromColumn && column <= toColumn && row >= fromRow && row <= toRow) it.remove();
+                }
+            } else {
+                for (int row = fromRow; row <= toRow; row++) {
+                    for (int column = fromColumn; column <= toColumn; column++) {
+                        tiles.remove(tileKey(column, row));
+                    }
+                }
+            }
+        }
+        super.repaint(tm, x, y, width, height);
+    }
+
+    private void setQuality(Graphics2D g, boolean rough) {
+        boolean overview = scale < OVERVIEW_SCALE;
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                overview || rough ? RenderingHints.VALUE_ANTIALIAS_OFF : RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(Drawable.KEY_OVERVIEW, overview);
+        g.setRenderingHint(Drawable.KEY_INTERACTIVE, rough);
+        if (rough) {
+            // Text without antialiasing is drawn from the cached glyph images
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+        }
+    }
+
+    /**
+     * Tells the panel the diagram is being moved around, so that it may paint rough until it goes idle.
+     */
+    private void interact() {
+        interactive = true;
+        idle.restart();
+    }
+
+    private void idle() {
+        // A drag goes on however long the mouse stays still, it is over at endDrag
+        if (moving != null) return;
+        interactive = false;
+        if (LOG_STATS) System.err.println(stats);
+        if (roughPainted) {
+            roughPainted = false;
+            tiles.keySet().removeAll(roughTiles);
+            roughTiles.clear();
+            Rectangle visible = getViewArea();
+            RepaintManager.currentManager(this).addDirtyRegion(this, visible.x, visible.y, visible.width,
+                    visible.height);
+        }
+    }
+
+    public PaintStats getPaintStats() {
+        return stats;
+    }
+
+    private void paintLine(Graphics2D g) {
         g.setStroke(lineStroke);
         g.setColor(Color.GRAY);
         if (type == CURVE) {
@@ -57,14 +378,213 @@ public class DrawPanel extends JPanel {
             g.drawLine(start.x, start.y, pivot.x, pivot.y);
             g.drawLine(pivot.x, pivot.y, end.x, end.y);
         }
+    }
 
-        for (Drawable d : graph.getEdges()) {
-            d.draw(g);
+    /**
+     * Starts painting the elements that are about to be dragged on top of a backdrop of all the others, until
+     * {@link #endDrag()}. The dragged elements are drawn above the rest in the meantime.
+     *
+     * @param elements the edges and nodes that will move; the actions move with their edges
+     */
+    public void beginDrag(Collection<? extends Element> elements) {
+        moving = Collections.newSetFromMap(new IdentityHashMap<>());
+        moving.addAll(elements);
+        backdrop = null;
+        interactive = true;
+        idle.stop();
+    }
+
+    public void endDrag() {
+        if (moving == null) return;
+        moving = null;
+        backdrop = null;
+        // What moved was already repainted, so the tiles are still good and only the dragged elements go back in order
+        RepaintManager.currentManager(this).addDirtyRegion(this, 0, 0, getWidth(), getHeight());
+        idle.restart();
+    }
+
+    /**
+     * @return false if the backdrop can't be used for this paint, which is then done as usual
+     */
+    private boolean paintOverBackdrop(Graphics2D g, boolean rough) {
+        Rectangle clip = g.getClipBounds();
+        Rectangle visible = getViewArea();
+        double device = getDeviceScale(g);
+        if (clip == null || visible.isEmpty() || !visible.contains(clip) || device <= 0) return false;
+        if (backdrop == null || !visible.equals(backdropArea) || device != backdropScale || scale != backdropZoom) {
+            paintBackdrop(visible, device, rough);
         }
 
-        for (Drawable d : graph.getNodes()) {
-            d.draw(g);
+        // The backdrop has one pixel per device pixel, so it is copied at the scale of the device
+        g.drawImage(backdrop, visible.x, visible.y, visible.x + visible.width, visible.y + visible.height,
+                0, 0, backdrop.getWidth(), backdrop.getHeight(), null);
+        g.scale(scale, scale);
+        setQuality(g, rough);
+        paintLine(g);
+        for (Element e : graph.getDrawablesIn(g.getClipBounds())) {
+            if (moving.contains(e)) e.draw(g);
         }
+        return true;
+    }
+
+    /**
+     * Part of the panel shown by its scroll pane. Not {@link #getVisibleRect()}, which goes through the overridden
+     * {@link #getBounds()}.
+     */
+    private Rectangle getViewArea() {
+        Container parent = getParent();
+        if (parent instanceof JViewport) return ((JViewport) parent).getViewRect();
+        return new Rectangle(0, 0, getWidth(), getHeight());
+    }
+
+    private void paintBackdrop(Rectangle visible, double device, boolean rough) {
+        int width = (int) Math.ceil(visible.width * device);
+        int height = (int) Math.ceil(visible.height * device);
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        backdrop = gc == null
+                ? new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB)
+                : gc.createCompatibleImage(width, height);
+        backdropArea = visible;
+        backdropScale = device;
+        backdropZoom = scale;
+
+        Graphics2D g = backdrop.createGraphics();
+        g.setColor(getBackground());
+        g.fillRect(0, 0, width, height);
+        g.scale(device, device);
+        g.translate(-visible.x, -visible.y);
+        g.clipRect(visible.x, visible.y, visible.width, visible.height);
+        g.scale(scale, scale);
+        setQuality(g, rough);
+        for (Element e : graph.getDrawablesIn(g.getClipBounds())) {
+            if (!moving.contains(e)) e.draw(g);
+        }
+        g.dispose();
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * Zooms in or out by a number of steps, keeping the point of the diagram at {@code anchor} where it is.
+     *
+     * @param steps  positive to zoom in, negative to zoom out
+     * @param anchor point of the panel, or null for the center of what is shown
+     */
+    public void zoom(int steps, Point anchor) {
+        setScale(scale * Math.pow(ZOOM_STEP, steps), anchor);
+    }
+
+    /**
+     * Sets the zoom, keeping the point of the diagram at {@code anchor} where it is.
+     *
+     * @param anchor point of the panel, or null for the center of what is shown
+     */
+    public void setScale(double newScale, Point anchor) {
+        newScale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, newScale));
+        // Close enough to the actual size is the actual size, so that zooming in and out gets back to it
+        if (Math.abs(newScale - 1) < 1e-3) newScale = 1;
+        if (newScale == scale) return;
+
+        Rectangle visible = getViewArea();
+        if (anchor == null) anchor = new Point(visible.x + visible.width / 2, visible.y + visible.height / 2);
+        double ratio = newScale / scale;
+        scale = newScale;
+        backdrop = null;
+
+        Container parent = getParent();
+        if (parent instanceof JViewport) {
+            JViewport viewport = (JViewport) parent;
+            revalidate();
+            viewport.validate();
+            Dimension view = viewport.getViewSize();
+            Dimension extent = viewport.getExtentSize();
+            int x = (int) Math.round(anchor.x * ratio) - (anchor.x - visible.x);
+            int y = (int) Math.round(anchor.y * ratio) - (anchor.y - visible.y);
+            x = Math.max(0, Math.min(view.width - extent.width, x));
+            y = Math.max(0, Math.min(view.height - extent.height, y));
+            viewport.setViewPosition(new Point(x, y));
+        }
+        repaint();
+    }
+
+    private void wheelMoved(MouseWheelEvent e) {
+        if ((e.getModifiersEx() & (InputEvent.CTRL_DOWN_MASK | InputEvent.META_DOWN_MASK)) != 0) {
+            zoom(-e.getWheelRotation(), e.getPoint());
+        } else if (getParent() != null) {
+            // Listening to the wheel keeps it from the scroll pane, so it is handed over
+            getParent().dispatchEvent(SwingUtilities.convertMouseEvent(this, e, getParent()));
+        }
+    }
+
+    /**
+     * Point of the diagram shown at the point {@code p} of the panel.
+     */
+    public Point toDiagram(Point p) {
+        return new Point((int) Math.floor(p.x / scale), (int) Math.floor(p.y / scale));
+    }
+
+    /**
+     * Point of the panel where the point {@code p} of the diagram is shown.
+     */
+    public Point toPanel(Point p) {
+        return new Point((int) Math.round(p.x * scale), (int) Math.round(p.y * scale));
+    }
+
+    /**
+     * Repaints the part of the panel that shows {@code area} of the diagram.
+     */
+    public void repaintDiagram(Rectangle area) {
+        int x = (int) Math.floor(area.x * scale);
+        int y = (int) Math.floor(area.y * scale);
+        int width = (int) Math.ceil((area.x + area.width) * scale) - x + 1;
+        int height = (int) Math.ceil((area.y + area.height) * scale) - y + 1;
+        repaint(x, y, width, height);
+    }
+
+    @Override
+    protected void processMouseEvent(MouseEvent e) {
+        if (pan(e)) return;
+        super.processMouseEvent(toDiagram(e));
+    }
+
+    @Override
+    protected void processMouseMotionEvent(MouseEvent e) {
+        if (pan(e)) return;
+        super.processMouseMotionEvent(toDiagram(e));
+    }
+
+    /**
+     * Moves the view while the middle button is dragged. These events are not passed on.
+     */
+    private boolean pan(MouseEvent e) {
+        boolean middle = SwingUtilities.isMiddleMouseButton(e);
+        if (!middle || !(getParent() instanceof JViewport)) return false;
+        JViewport viewport = (JViewport) getParent();
+        Point onScreen = e.getLocationOnScreen();
+        if (e.getID() == MouseEvent.MOUSE_PRESSED) {
+            panFrom = onScreen;
+        } else if (e.getID() == MouseEvent.MOUSE_DRAGGED && panFrom != null) {
+            Rectangle visible = viewport.getViewRect();
+            Dimension view = viewport.getViewSize();
+            int x = visible.x - (onScreen.x - panFrom.x);
+            int y = visible.y - (onScreen.y - panFrom.y);
+            x = Math.max(0, Math.min(view.width - visible.width, x));
+            y = Math.max(0, Math.min(view.height - visible.height, y));
+            viewport.setViewPosition(new Point(x, y));
+            panFrom = onScreen;
+        } else if (e.getID() == MouseEvent.MOUSE_RELEASED) {
+            panFrom = null;
+        }
+        return true;
+    }
+
+    private MouseEvent toDiagram(MouseEvent e) {
+        if (scale == 1) return e;
+        Point p = toDiagram(e.getPoint());
+        return new MouseEvent(e.getComponent(), e.getID(), e.getWhen(), e.getModifiersEx(), p.x, p.y,
+                e.getXOnScreen(), e.getYOnScreen(), e.getClickCount(), e.isPopupTrigger(), e.getButton());
     }
 
     @Override
@@ -88,6 +608,18 @@ public class DrawPanel extends JPanel {
         this.type = type;
     }
 
+    /**
+     * Area of the diagram covered by the line being drawn, or null if there is none.
+     */
+    public Rectangle getLineArea() {
+        if (type == NONE || start == null || pivot == null || end == null) return null;
+        Rectangle area = new Rectangle(start);
+        area.add(pivot);
+        area.add(end);
+        area.grow(2, 2);
+        return area;
+    }
+
     public void addSize(int width, int height) {
         bounds = new Rectangle(bounds.x, bounds.y, bounds.width + width, bounds.height + height);
     }
@@ -96,6 +628,13 @@ public class DrawPanel extends JPanel {
         bounds = new Rectangle(bounds.x, bounds. y, width, height);
     }
 
+    /**
+     * Size of the diagram, regardless of the zoom.
+     */
+    public Dimension getDiagramSize() {
+        return new Dimension(bounds.width + 100, bounds.height + 100);
+    }
+
     @Override
     public Rectangle getBounds() {
         return new Rectangle(bounds);
@@ -103,8 +642,8 @@ public class DrawPanel extends JPanel {
 
     @Override
     public Dimension getPreferredSize() {
-        dim.width = bounds.width + 100;
-        dim.height = bounds.height + 100;
+        dim.width = (int) Math.ceil((bounds.width + 100) * scale);
+        dim.height = (int) Math.ceil((bounds.height + 100) * scale);
         return dim;
     }
 }
@@ -13,5 +13,27 @@ public interface Drawable {
             BasicStroke.JOIN_MITER, 10.0f,
             new float[]{10.0f}, 0.0f);
 
+    /**
+     * Rendering hint set to {@code true} when the diagram is shown too small to be read, for the elements to leave out
+     * their text and details and draw simplified shapes.
+     */
+    RenderingHints.Key KEY_OVERVIEW = new RenderingHints.Key(1) {
+        @Override
+        public boolean isCompatibleValue(Object val) {
+            return val instanceof Boolean;
+        }
+    };
+
+    /**
+     * Rendering hint set to {@code true} while the diagram is dragged or scrolled, for the elements to draw thin strokes
+     * until it is painted again at full quality.
+     */
+    RenderingHints.Key KEY_INTERACTIVE = new RenderingHints.Key(2) {
+        @Override
+        public boolean isCompatibleValue(Object val) {
+            return val instanceof Boolean;
+        }
+    };
+
     void draw(Graphics2D g);
 }
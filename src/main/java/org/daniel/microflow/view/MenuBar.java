@@ -7,6 +7,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 
 public class MenuBar extends JMenuBar {
@@ -28,6 +29,7 @@ public class MenuBar extends JMenuBar {
     private JMenuItem jmiNewFile;
     private JMenuItem jmiOpenFile;
     private JMenuItem jmiSave;
+    private JMenuItem jmiSaveAs;
     private JMenuItem jmiSavePNG;
     private JMenuItem jmiPrint;
     private JMenuItem jmiGenFiles;
@@ -38,6 +40,7 @@ public class MenuBar extends JMenuBar {
     private JMenuItem jmiCursor;
     private JMenuItem jmiDelete;
     private JMenuItem jmiUndo;
+    private JMenuItem jmiRedo;
     private JMenuItem jmiTAD;
     private JMenuItem jmiVar;
     private JMenuItem jmiPeri;
@@ -85,6 +88,9 @@ public class MenuBar extends JMenuBar {
         jmiSave = new JMenuItem("Save");
         jmiSave.setAccelerator(
                 KeyStroke.getKeyStroke(KeyEvent.VK_S, (Toolkit.getDefaultToolkit().getMenuShortcutKeyMask())));
+        jmiSaveAs = new JMenuItem("Save as...");
+        jmiSaveAs.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S,
+                Toolkit.getDefaultToolkit().getMenuShortcutKeyMask() | InputEvent.SHIFT_DOWN_MASK));
         jmiSavePNG = new JMenuItem("Save as PNG");
         jmiPrint = new JMenuItem("Print");
         jmiPrint.setAccelerator(
@@ -96,6 +102,7 @@ public class MenuBar extends JMenuBar {
         jmFile.add(jmiNewFile);
         jmFile.add(jmiOpenFile);
         jmFile.add(jmiSave);
+        jmFile.add(jmiSaveAs);
         jmFile.add(jmiSavePNG);
         jmFile.add(jmiPrint);
         jmFile.addSeparator();
@@ -121,10 +128,14 @@ public class MenuBar extends JMenuBar {
         jmiUndo = new JMenuItem("Undo");
         jmiUndo.setAccelerator(
                 KeyStroke.getKeyStroke(KeyEvent.VK_Z, (Toolkit.getDefaultToolkit().getMenuShortcutKeyMask())));
+        jmiRedo = new JMenuItem("Redo");
+        jmiRedo.setAccelerator(
+                KeyStroke.getKeyStroke(KeyEvent.VK_Y, (Toolkit.getDefaultToolkit().getMenuShortcutKeyMask())));
 
         jmTools.add(jmiCursor);
         jmTools.add(jmiDelete);
         jmTools.add(jmiUndo);
+        jmTools.add(jmiRedo);
         jmTools.addSeparator();
 
         /* TAD Tools */
@@ -157,7 +168,17 @@ public class MenuBar extends JMenuBar {
         //JMenuItem jmiMinimize = new JMenuItem("Minimize");
         //JMenuItem jmiMaximize = new JMenuItem("Maximize");
         JMenuItem jmiToolBar = new JMenuItem("Show/hide toolbar");
+        JMenuItem jmiMiniMap = new JMenuItem("Show/hide minimap");
         JMenuItem jmiSize = new JMenuItem("Change size");
+        JMenuItem jmiZoomIn = new JMenuItem("Zoom in");
+        jmiZoomIn.setAccelerator(
+                KeyStroke.getKeyStroke(KeyEvent.VK_EQUALS, (Toolkit.getDefaultToolkit().getMenuShortcutKeyMask())));
+        JMenuItem jmiZoomOut = new JMenuItem("Zoom out");
+        jmiZoomOut.setAccelerator(
+                KeyStroke.getKeyStroke(KeyEvent.VK_MINUS, (Toolkit.getDefaultToolkit().getMenuShortcutKeyMask())));
+        JMenuItem jmiActualSize = new JMenuItem("Actual size");
+        jmiActualSize.setAccelerator(
+                KeyStroke.getKeyStroke(KeyEvent.VK_0, (Toolkit.getDefaultToolkit().getMenuShortcutKeyMask())));
 
         /* Add actions */
         //jmiMinimize.addActionListener(e -> view.setExtendedState(JFrame.ICONIFIED));
@@ -172,12 +193,23 @@ public class MenuBar extends JMenuBar {
             }
         });
 
+        jmiMiniMap.addActionListener(e -> view.getMiniMap().setVisible(!view.getMiniMap().isVisible()));
+
         jmiSize.addActionListener(e -> view.changeDimension());
 
+        jmiZoomIn.addActionListener(e -> view.getDrawPanel().zoom(1, null));
+        jmiZoomOut.addActionListener(e -> view.getDrawPanel().zoom(-1, null));
+        jmiActualSize.addActionListener(e -> view.getDrawPanel().setScale(1, null));
+
         //jmWindow.add(jmiMinimize);
         //jmWindow.add(jmiMaximize);
         jmWindow.add(jmiToolBar);
+        jmWindow.add(jmiMiniMap);
         jmWindow.add(jmiSize);
+        jmWindow.addSeparator();
+        jmWindow.add(jmiZoomIn);
+        jmWindow.add(jmiZoomOut);
+        jmWindow.add(jmiActualSize);
     }
 
 
@@ -201,6 +233,8 @@ public class MenuBar extends JMenuBar {
         jmiOpenFile.setActionCommand(CursorDetail.OPEN_FILE.name());
         jmiSave.addActionListener(c);
         jmiSave.setActionCommand(CursorDetail.SAVE_FILE.name());
+        jmiSaveAs.addActionListener(c);
+        jmiSaveAs.setActionCommand(CursorDetail.SAVE_FILE_AS.name());
         jmiSavePNG.addActionListener(c);
         jmiSavePNG.setActionCommand(CursorDetail.SAVE_FILE_PNG.name());
         jmiPrint.addActionListener(c);
@@ -218,6 +252,8 @@ public class MenuBar extends JMenuBar {
         jmiDelete.setActionCommand(CursorDetail.DELETING.name());
         jmiUndo.setActionCommand(CursorDetail.UNDO.name());
         jmiUndo.addActionListener(c);
+        jmiRedo.setActionCommand(CursorDetail.REDO.name());
+        jmiRedo.addActionListener(c);
 
         jmiTAD.addActionListener(c);
         jmiTAD.setActionCommand(CursorDetail.ADD_TAD.name());
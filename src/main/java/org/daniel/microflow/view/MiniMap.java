@@ -0,0 +1,204 @@
+package org.daniel.microflow.view;
+
+import org.daniel.microflow.model.Element;
+import org.daniel.microflow.model.Graph;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole diagram in small, with the part shown by the scroll pane framed. Clicking or dragging on it moves the view
+ * there.
+ *
+ * The diagram is kept in an image at the scale of the map. When part of it changes, copies of the elements there are
+ * drawn simplified on a background thread, and only that part of the image is replaced, so the elements are never
+ * painted at full quality for it.
+ */
+public class MiniMap extends JPanel {
+
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 150;
+
+    /**
+     * Changes are gathered for this long before they are drawn, a drag changes the diagram many times a second.
+     */
+    private static final int UPDATE_DELAY = 250;
+
+    private static final Color FRAME = new Color(0x3A7BD5);
+
+    private final Graph graph;
+    private final DrawPanel drawPanel;
+    private final JViewport viewport;
+    private final ExecutorService renderer;
+    private final Timer updateTimer;
+
+    private BufferedImage image;
+    private double mapScale;
+
+    /*
+     * Changes waiting to be drawn, in diagram coordinates. The generation goes up every time the image is replaced,
+     * so that what was being drawn for the previous one is thrown away.
+     */
+    private Rectangle dirty;
+    private int generation;
+
+    public MiniMap(Graph graph, DrawPanel drawPanel, JViewport viewport) {
+        this.graph = graph;
+        this.drawPanel = drawPanel;
+        this.viewport = viewport;
+        setBackground(drawPanel.getBackground());
+        setBorder(BorderFactory.createLineBorder(Color.GRAY));
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "Microflow minimap");
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        renderer = executor;
+        updateTimer = new Timer(UPDATE_DELAY, e -> update());
+        updateTimer.setRepeats(false);
+
+        graph.addDamageListener(this::changed);
+        viewport.addChangeListener(e -> repaint());
+
+        MouseAdapter navigate = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                if (SwingUtilities.isLeftMouseButton(e)) centerOn(e.getPoint());
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (SwingUtilities.isLeftMouseButton(e)) centerOn(e.getPoint());
+            }
+        };
+        addMouseListener(navigate);
+        addMouseMotionListener(navigate);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        return new Dimension(WIDTH, HEIGHT);
+    }
+
+    private void changed(Rectangle area) {
+        dirty = dirty == null ? new Rectangle(area) : dirty.union(area);
+        if (!updateTimer.isRunning()) updateTimer.start();
+    }
+
+    /**
+     * Sends what changed to be drawn, or the whole diagram if the map has to be made again because the diagram or
+     * the map were resized.
+     */
+    private void update() {
+        if (!isShowing()) return;
+        Dimension size = drawPanel.getDiagramSize();
+        double fit = getFit();
+        if (fit <= 0) return;
+        int width = Math.max(1, (int) Math.ceil(size.width * fit));
+        int height = Math.max(1, (int) Math.ceil(size.height * fit));
+
+        if (image == null || fit != mapScale || image.getWidth() != width || image.getHeight() != height) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            mapScale = fit;
+            generation++;
+            dirty = new Rectangle(0, 0, size.width, size.height);
+        }
+        if (dirty == null) return;
+
+        // The pixels of the map the change touches, and the part of the diagram they show
+        int x = Math.max(0, (int) Math.floor(dirty.x * fit));
+        int y = Math.max(0, (int) Math.floor(dirty.y * fit));
+        int right = Math.min(width, (int) Math.ceil((dirty.x + dirty.width) * fit) + 1);
+        int bottom = Math.min(height, (int) Math.ceil((dirty.y + dirty.height) * fit) + 1);
+        dirty = null;
+        if (right <= x || bottom <= y) return;
+        Rectangle pixels = new Rectangle(x, y, right - x, bottom - y);
+        Rectangle area = new Rectangle((int) Math.floor(x / fit), (int) Math.floor(y / fit),
+                (int) Math.ceil(pixels.width / fit) + 1, (int) Math.ceil(pixels.height / fit) + 1);
+
+        List<Element> copies = graph.copyDrawablesIn(area);
+        int drawnFor = generation;
+        Color background = getBackground();
+        renderer.execute(() -> {
+            BufferedImage part = render(copies, pixels, fit, background);
+            SwingUtilities.invokeLater(() -> {
+                if (drawnFor != generation) return;
+                Graphics2D g = image.createGraphics();
+                g.drawImage(part, pixels.x, pixels.y, null);
+                g.dispose();
+                repaint();
+            });
+        });
+    }
+
+    /**
+     * Scale at which the whole diagram fits in the map, or 0 if either is empty.
+     */
+    private double getFit() {
+        Rectangle map = SwingUtilities.calculateInnerArea(this, null);
+        Dimension size = drawPanel.getDiagramSize();
+        if (map.isEmpty() || size.width <= 0 || size.height <= 0) return 0;
+        return Math.min((double) map.width / size.width, (double) map.height / size.height);
+    }
+
+    private static BufferedImage render(List<Element> elements, Rectangle pixels, double scale, Color background) {
+        BufferedImage part = new BufferedImage(pixels.width, pixels.height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = part.createGraphics();
+        g.setColor(background);
+        g.fillRect(0, 0, pixels.width, pixels.height);
+        g.translate(-pixels.x, -pixels.y);
+        g.scale(scale, scale);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        g.setRenderingHint(Drawable.KEY_OVERVIEW, true);
+        for (Element e : elements) {
+            e.draw(g);
+        }
+        g.dispose();
+        return part;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g0) {
+        super.paintComponent(g0);
+        if ((image == null || dirty != null || getFit() != mapScale) && !updateTimer.isRunning()) {
+            updateTimer.start();
+        }
+        if (image == null) return;
+        Graphics2D g = (Graphics2D) g0;
+        Insets insets = getInsets();
+        g.drawImage(image, insets.left, insets.top, null);
+
+        Rectangle shown = viewport.getViewRect();
+        double toMap = mapScale / drawPanel.getScale();
+        g.setColor(FRAME);
+        g.drawRect(insets.left + (int) (shown.x * toMap), insets.top + (int) (shown.y * toMap),
+                (int) (shown.width * toMap), (int) (shown.height * toMap));
+    }
+
+    /**
+     * Moves the view so that the point of the diagram under {@code p} is in its center.
+     */
+    private void centerOn(Point p) {
+        if (image == null) return;
+        Insets insets = getInsets();
+        double toPanel = drawPanel.getScale() / mapScale;
+        Rectangle shown = viewport.getViewRect();
+        Dimension view = viewport.getViewSize();
+        int x = (int) ((p.x - insets.left) * toPanel) - shown.width / 2;
+        int y = (int) ((p.y - insets.top) * toPanel) - shown.height / 2;
+        x = Math.max(0, Math.min(view.width - shown.width, x));
+        y = Math.max(0, Math.min(view.height - shown.height, y));
+        viewport.setViewPosition(new Point(x, y));
+    }
+}
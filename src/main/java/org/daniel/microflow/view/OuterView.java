@@ -14,6 +14,10 @@ import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class OuterView extends JFrame {
 
@@ -21,9 +25,12 @@ public class OuterView extends JFrame {
     private static final int MIN_WIDTH = 1024;
     private static final int MIN_HEIGHT = 768;
     private static final int CLOSE_BTN_SIZE = 18;
+    private static final long QUIT_TIMEOUT = 10000;
 
     private final JTabbedPane tabbedPane;
+    private final Map<Component, Controller> controllers;
     private int tabId;
+    private boolean quitting;
 
     public OuterView() {
         setTitle(TITLE);
@@ -31,6 +38,7 @@ public class OuterView extends JFrame {
         setLocationRelativeTo(null);
         setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
         tabbedPane = new JTabbedPane();
+        controllers = new HashMap<>();
         tabbedPane.setBorder(new EmptyBorder(0, 0, 0, 0));
         setTitle("Microflow - " + TITLE + tabId);
 
@@ -50,7 +58,7 @@ public class OuterView extends JFrame {
             public void windowClosing(WindowEvent e) {
                 if (JOptionPane.showConfirmDialog(OuterView.this, "Are you sure you want to quit?",
                         "Exit", JOptionPane.YES_NO_OPTION) == JOptionPane.OK_OPTION) {
-                    System.exit(0);
+                    quit();
                 }
             }
         });
@@ -79,15 +87,36 @@ public class OuterView extends JFrame {
     }
 
     public void addTabFromGraph(Graph graph, String name, File selected) {
+        addTabFromGraph(graph, name, selected, selected);
+    }
+
+    /**
+     * Adds the tab of a diagram recovered from an autosave, which may differ from the file it was saved to.
+     */
+    public void addRecoveredTab(Graph graph, String name, File selected) {
+        addTabFromGraph(graph, name, selected, null);
+    }
+
+    private void addTabFromGraph(Graph graph, String name, File selected, File journalBase) {
+        graph.registerHistory();
         DiagramView view = new DiagramView(this, graph);
         Controller controller = new Controller(view, graph);
         view.registerController(controller);
         view.addActionListener(controller);
         controller.setChooserFile(selected);
+        controller.startJournal(journalBase);
+        controllers.put(view, controller);
 
         JPanel tabTitle = new JPanel(new FlowLayout(FlowLayout.CENTER, 3, 3));
 
-        tabTitle.add(new JLabel(name));
+        JLabel title = new JLabel(name) {
+            @Override
+            public String getToolTipText() {
+                return String.format("Undo history: %.1f KB", graph.getHistoryFootprint() / 1024.0);
+            }
+        };
+        title.setToolTipText("");
+        tabTitle.add(title);
         tabTitle.setOpaque(false);
 
         JButton closeButton = ToolBar.makeCustomButton("Close tab", ToolBar.CLOSE_ICON, CLOSE_BTN_SIZE - 3);
@@ -120,12 +149,44 @@ public class OuterView extends JFrame {
     }
 
     public void setCurrentTabTitle(String title) {
-        int index = tabbedPane.getSelectedIndex();
+        setTabTitle(tabbedPane.getSelectedIndex(), title);
+    }
+
+    /**
+     * Renames the tab of a diagram even if it is no longer the selected one.
+     */
+    public void setTabTitle(Component tab, String title) {
+        int index = tabbedPane.indexOfComponent(tab);
+        if (index >= 0) setTabTitle(index, title);
+    }
+
+    private void setTabTitle(int index, String title) {
         JPanel currentTitle = (JPanel) tabbedPane.getTabComponentAt(index);
         JLabel label = (JLabel) currentTitle.getComponent(0);
         label.setText(title);
     }
 
+    /**
+     * Exits once the pending saves are written, or after {@link #QUIT_TIMEOUT} at most. The autosave journals are
+     * deleted, as quitting discards the changes that were not saved. The wait happens on its own thread so that the
+     * window keeps painting meanwhile.
+     */
+    private void quit() {
+        if (quitting) return;
+        quitting = true;
+        setEnabled(false);
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        List<Controller> closing = new ArrayList<>(controllers.values());
+        for (Controller c : closing) c.close();
+        Thread waiter = new Thread(() -> {
+            long deadline = System.currentTimeMillis() + QUIT_TIMEOUT;
+            for (Controller c : closing) c.awaitClosed(Math.max(1, deadline - System.currentTimeMillis()));
+            System.exit(0);
+        }, "Microflow quit");
+        waiter.setDaemon(true);
+        waiter.start();
+    }
+
     private ActionListener closeTabListener = new ActionListener() {
         @Override
         public void actionPerformed(ActionEvent e) {
@@ -140,8 +201,9 @@ public class OuterView extends JFrame {
                             "Close tab", JOptionPane.YES_NO_OPTION);
                     if (result == JOptionPane.OK_OPTION) {
                         if (tabbedPane.getTabCount() == 1) {
-                            System.exit(0);
+                            quit();
                         } else {
+                            controllers.remove(tabbedPane.getComponentAt(i)).close();
                             tabbedPane.removeTabAt(i);
                         }
                     }
@@ -0,0 +1,51 @@
+package org.daniel.microflow.view;
+
+/**
+ * Times of the paints of a {@link DrawPanel}, kept apart for the full quality paints and the interactive ones, to tune
+ * when the panel should give up quality while the diagram is moved around.
+ */
+public class PaintStats {
+
+    private final long[] count = new long[2];
+    private final long[] total = new long[2];
+    private final long[] max = new long[2];
+    private final long[] last = new long[2];
+
+    void record(long nanos, boolean interactive) {
+        int i = interactive ? 1 : 0;
+        count[i]++;
+        total[i] += nanos;
+        max[i] = Math.max(max[i], nanos);
+        last[i] = nanos;
+    }
+
+    public long getCount(boolean interactive) {
+        return count[interactive ? 1 : 0];
+    }
+
+    public double getAverageMillis(boolean interactive) {
+        int i = interactive ? 1 : 0;
+        return count[i] == 0 ? 0 : total[i] / 1e6 / count[i];
+    }
+
+    public double getMaxMillis(boolean interactive) {
+        return max[interactive ? 1 : 0] / 1e6;
+    }
+
+    public double getLastMillis(boolean interactive) {
+        return last[interactive ? 1 : 0] / 1e6;
+    }
+
+    public void reset() {
+        for (int i = 0; i < 2; i++) {
+            count[i] = total[i] = max[i] = last[i] = 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("full: %d paints, %.1f ms average, %.1f ms max; interactive: %d paints, %.1f ms average, "
+                        + "%.1f ms max", getCount(false), getAverageMillis(false), getMaxMillis(false),
+                getCount(true), getAverageMillis(true), getMaxMillis(true));
+    }
+}
@@ -0,0 +1,70 @@
+package org.daniel.microflow.view;
+
+import org.daniel.microflow.model.PngFormat;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Options of a PNG export: whether to leave out the empty space around the diagram, and how large to make it, as a
+ * scale or as the resolution the diagram is printed at when the image is printed at its actual size.
+ */
+public class PngOptionsPanel extends JPanel {
+
+    private static final int SCREEN_DPI = PngFormat.SCREEN_DPI;
+
+    private final JCheckBox crop;
+    private final JSpinner scale;
+    private final JSpinner dpi;
+    private boolean syncing;
+    private boolean dpiChosen;
+
+    public PngOptionsPanel() {
+        BorderLayout bl = new BorderLayout();
+        bl.setVgap(10);
+        setLayout(bl);
+
+        crop = new JCheckBox("Crop to the contents of the diagram", true);
+        scale = new JSpinner(new SpinnerNumberModel(100, 10, 1000, 25));
+        dpi = new JSpinner(new SpinnerNumberModel(SCREEN_DPI, 10, 960, 24));
+        scale.addChangeListener(e -> {
+            if (!syncing) dpiChosen = false;
+            sync(dpi, (int) Math.round((Integer) scale.getValue() * SCREEN_DPI / 100.0));
+        });
+        dpi.addChangeListener(e -> {
+            if (!syncing) dpiChosen = true;
+            sync(scale, (int) Math.round((Integer) dpi.getValue() * 100.0 / SCREEN_DPI));
+        });
+
+        JPanel grid = new JPanel(new GridLayout(2, 2, 10, 5));
+        grid.add(new JLabel("Scale (%):"));
+        grid.add(scale);
+        grid.add(new JLabel("Resolution (DPI):"));
+        grid.add(dpi);
+        add(crop, BorderLayout.NORTH);
+        add(grid, BorderLayout.CENTER);
+    }
+
+    private void sync(JSpinner other, int value) {
+        if (syncing) return;
+        syncing = true;
+        SpinnerNumberModel model = (SpinnerNumberModel) other.getModel();
+        int min = (Integer) model.getMinimum();
+        int max = (Integer) model.getMaximum();
+        other.setValue(Math.max(min, Math.min(max, value)));
+        syncing = false;
+    }
+
+    public boolean isCrop() {
+        return crop.isSelected();
+    }
+
+    /**
+     * Pixels of the image per pixel of the diagram, from the resolution if that is what was set last, as the rounded
+     * percentage would not give it exactly.
+     */
+    public double getScale() {
+        if (dpiChosen) return (Integer) dpi.getValue() / (double) SCREEN_DPI;
+        return (Integer) scale.getValue() / 100.0;
+    }
+}
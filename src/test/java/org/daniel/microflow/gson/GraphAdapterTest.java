@@ -0,0 +1,52 @@
+package org.daniel.microflow.gson;
+
+import org.daniel.microflow.model.Action;
+import org.daniel.microflow.model.Edge;
+import org.daniel.microflow.model.Graph;
+import org.daniel.microflow.model.Node;
+import org.junit.Test;
+
+import java.awt.*;
+import java.net.URISyntaxException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GraphAdapterTest {
+
+    @Test
+    public void filesOfOlderVersionsOpen() throws URISyntaxException {
+        Graph g = new Graph();
+        assertTrue(g.loadFromFile(Paths.get(getClass().getResource("legacy.mcf").toURI()).toString()));
+        assertEquals(Arrays.asList("STATE 0 (100, 100)", "STATE 1 (300, 120)", "VARIABLE speed (200, 300)"),
+                names(g.getNodes()));
+
+        List<Edge> edges = g.getEdges();
+        assertEquals(3, edges.size());
+        assertEquals("go", edges.get(0).getName());
+        assertSame(g.getNodes().get(0), edges.get(0).getN1());
+        assertSame(g.getNodes().get(1), edges.get(0).getN2());
+        assertSame(g.getNodes().get(1), edges.get(1).getN1());
+        assertSame(g.getNodes().get(1), edges.get(1).getN2());
+        assertTrue(edges.get(2).isBidirectional());
+
+        assertEquals(1, g.getActions().size());
+        Action action = g.getActions().get(0);
+        assertSame(action, edges.get(0).getAction());
+        assertEquals("speed = 2;", action.getName());
+        assertEquals(new Point(202, 81), action.getStart());
+    }
+
+    private static List<String> names(List<Node> nodes) {
+        List<String> names = new ArrayList<>();
+        for (Node n : nodes) {
+            names.add(n.getType() + " " + n.getName() + " (" + n.getCenter().x + ", " + n.getCenter().y + ")");
+        }
+        return names;
+    }
+}
@@ -0,0 +1,84 @@
+package org.daniel.microflow.model;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinaryFormatTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip() throws IOException {
+        for (int states : new int[]{0, 1, 500}) {
+            Graph g = Samples.graph(states);
+            Path file = folder.getRoot().toPath().resolve("binary" + states + ".mcf");
+            g.save(file.toString(), FileFormat.BINARY, ProgressListener.NONE);
+            assertTrue(BinaryFormat.isBinary(file));
+
+            Graph read = new Graph();
+            read.load(file.toString(), ProgressListener.NONE);
+            assertEquals(Samples.contents(g), Samples.contents(read));
+        }
+    }
+
+    @Test
+    public void sameAsJson() throws IOException {
+        Graph g = Samples.graph(50);
+        Path binary = folder.getRoot().toPath().resolve("binary.mcf");
+        Path json = folder.getRoot().toPath().resolve("json.mcf");
+        g.save(binary.toString(), FileFormat.BINARY, ProgressListener.NONE);
+        g.save(json.toString(), FileFormat.JSON, ProgressListener.NONE);
+        assertFalse(BinaryFormat.isBinary(json));
+
+        Graph fromBinary = new Graph();
+        fromBinary.load(binary.toString(), ProgressListener.NONE);
+        Graph fromJson = new Graph();
+        fromJson.load(json.toString(), ProgressListener.NONE);
+        assertEquals(Samples.contents(fromJson), Samples.contents(fromBinary));
+        assertEquals(fromJson.getStateCount(), fromBinary.getStateCount());
+        assertEquals(fromJson.getInterfaceCount(), fromBinary.getInterfaceCount());
+    }
+
+    @Test
+    public void savedAgainAfterLoading() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("again.mcf");
+        Samples.graph(10).save(file.toString(), FileFormat.BINARY, ProgressListener.NONE);
+        Graph read = new Graph();
+        read.load(file.toString(), ProgressListener.NONE);
+        read.save(file.toString(), FileFormat.BINARY, ProgressListener.NONE);
+
+        Graph again = new Graph();
+        again.load(file.toString(), ProgressListener.NONE);
+        assertEquals(Samples.contents(read), Samples.contents(again));
+    }
+
+    @Test
+    public void truncatedFile() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("truncated.mcf");
+        Samples.graph(20).save(file.toString(), FileFormat.BINARY, ProgressListener.NONE);
+        byte[] bytes = Files.readAllBytes(file);
+        Graph g = Samples.graph(1);
+        String before = Samples.contents(g);
+        for (int length : new int[]{8, bytes.length / 3, bytes.length - 1}) {
+            Files.write(file, Arrays.copyOf(bytes, length));
+            try {
+                g.load(file.toString(), ProgressListener.NONE);
+                fail("Read a file cut at " + length + " of " + bytes.length + " bytes");
+            } catch (IOException expected) {
+                assertEquals(before, Samples.contents(g));
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package org.daniel.microflow.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the closed-form distances and exits against the curve sampled densely.
+ */
+public class GeometryTest {
+
+    private static final int SAMPLES = 20000;
+
+    @Test
+    public void closestOnCurvedEdges() {
+        Random random = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            double[] c = randomCurve(random);
+            double px = random.nextDouble() * 600 - 300, py = random.nextDouble() * 600 - 300;
+            assertClosest(c, px, py);
+        }
+    }
+
+    @Test
+    public void closestOnStraightCurves() {
+        // Control point in the middle, past an end, and on either end
+        double[][] curves = {
+                {0, 0, 50, 50, 100, 100},
+                {0, 0, 150, 0, 100, 0},
+                {0, 0, 0, 0, 100, 40},
+                {0, 0, 100, 40, 100, 40},
+                {-30, 10, -30, 10, -30, 10}
+        };
+        Random random = new Random(2);
+        for (double[] c : curves) {
+            for (int i = 0; i < 200; i++) {
+                assertClosest(c, random.nextDouble() * 400 - 200, random.nextDouble() * 400 - 200);
+            }
+            assertClosest(c, c[0], c[1]);
+            assertClosest(c, c[4], c[5]);
+        }
+    }
+
+    @Test
+    public void closestFromCenterOfCurvature() {
+        // B(t) = (-100 + 200t, 200t(1 - t)): its vertex (0, 50) has a radius of curvature of 100
+        double[] c = {-100, 0, 0, 100, 100, 0};
+        assertClosest(c, 0, -50);
+        assertClosest(c, 0, -50 + 1e-7);
+        assertClosest(c, 0, 50);
+        for (int i = -10; i <= 10; i++) {
+            assertClosest(c, i * 1e-3, -50 + i * 1e-3);
+        }
+    }
+
+    @Test
+    public void distanceToSegment() {
+        assertEquals(25, Geometry.segmentDistanceSq(5, 5, 0, 0, 10, 0), 1e-9);
+        assertEquals(50, Geometry.segmentDistanceSq(-5, 5, 0, 0, 10, 0), 1e-9);
+        assertEquals(2, Geometry.segmentDistanceSq(4, 4, 3, 3, 3, 3), 1e-9);
+    }
+
+    @Test
+    public void exitCircle() {
+        Random random = new Random(3);
+        for (int i = 0; i < 1000; i++) {
+            double[] c = randomCurve(random);
+            double r = 5 + random.nextDouble() * 40;
+            double t = Geometry.exitCircle(c[0], c[1], c[2], c[3], c[4], c[5], c[4], c[5], r);
+            assertExit(c, t, c[4], c[5], r, 0, true);
+        }
+    }
+
+    @Test
+    public void exitBox() {
+        Random random = new Random(4);
+        for (int i = 0; i < 1000; i++) {
+            double[] c = randomCurve(random);
+            double w = 5 + random.nextDouble() * 60, h = 5 + random.nextDouble() * 30;
+            double t = Geometry.exitBox(c[0], c[1], c[2], c[3], c[4], c[5], c[4], c[5], w, h);
+            assertExit(c, t, c[4], c[5], w, h, false);
+        }
+    }
+
+    @Test
+    public void neverLeaving() {
+        assertEquals(-1, Geometry.exitCircle(0, 0, 10, 10, 20, 0, 10, 0, 50), 0);
+        assertEquals(-1, Geometry.exitBox(0, 0, 10, 10, 20, 0, 10, 0, 30, 30), 0);
+        assertEquals(-1, Geometry.exitCircle(5, 5, 5, 5, 5, 5, 0, 0, 10), 0);
+        // Leaving through the start only, the end being inside
+        double t = Geometry.exitCircle(-100, 0, 0, 0, 0, 0, 0, 0, 10);
+        assertEquals(10, distance(pointAt(new double[]{-100, 0, 0, 0, 0, 0}, t), 0, 0), 1e-2);
+    }
+
+    @Test
+    public void endingOutside() {
+        assertEquals(1, Geometry.exitCircle(0, 0, 50, 50, 100, 0, 0, 0, 10), 0);
+        assertEquals(1, Geometry.exitBox(0, 0, 50, 50, 100, 0, 0, 0, 10, 10), 0);
+    }
+
+    private static double[] randomCurve(Random random) {
+        double[] c = new double[6];
+        for (int i = 0; i < 6; i++) c[i] = random.nextDouble() * 400 - 200;
+        return c;
+    }
+
+    private static void assertClosest(double[] c, double px, double py) {
+        double expected = Math.sqrt(sampledDistanceSq(c, px, py));
+        double actual = Math.sqrt(Geometry.quadDistanceSq(px, py, c[0], c[1], c[2], c[3], c[4], c[5]));
+        assertEquals("distance from (" + px + ", " + py + ")", expected, actual, 1e-3);
+
+        double t = Geometry.quadClosest(px, py, c[0], c[1], c[2], c[3], c[4], c[5]);
+        assertTrue(t >= 0 && t <= 1);
+        assertEquals(actual, distance(pointAt(c, t), px, py), 1e-6);
+    }
+
+    private static void assertExit(double[] c, double t, double cx, double cy, double a, double b, boolean circle) {
+        boolean leaves = false;
+        for (int i = 0; i <= SAMPLES; i++) {
+            if (outside(pointAt(c, i / (double) SAMPLES), cx, cy, a, b, circle) > 1e-6) leaves = true;
+        }
+        if (!leaves) {
+            assertEquals(-1, t, 0);
+            return;
+        }
+        assertTrue(t >= 0 && t <= 1);
+        assertEquals(0, outside(pointAt(c, t), cx, cy, a, b, circle), 1e-2);
+        // Nothing after it is outside
+        for (int i = 0; i <= SAMPLES; i++) {
+            double s = t + (1 - t) * i / SAMPLES;
+            assertTrue(outside(pointAt(c, s), cx, cy, a, b, circle) < 1e-2);
+        }
+    }
+
+    private static double sampledDistanceSq(double[] c, double px, double py) {
+        double best = Double.MAX_VALUE;
+        int bestI = 0;
+        for (int i = 0; i <= SAMPLES; i++) {
+            double d = distance(pointAt(c, i / (double) SAMPLES), px, py);
+            if (d < best) {
+                best = d;
+                bestI = i;
+            }
+        }
+        // Golden section search around the closest sample
+        double lo = Math.max(0, (bestI - 1) / (double) SAMPLES), hi = Math.min(1, (bestI + 1) / (double) SAMPLES);
+        for (int i = 0; i < 100; i++) {
+            double m1 = lo + (hi - lo) * 0.382, m2 = lo + (hi - lo) * 0.618;
+            if (distance(pointAt(c, m1), px, py) < distance(pointAt(c, m2), px, py)) {
+                hi = m2;
+            } else {
+                lo = m1;
+            }
+        }
+        best = Math.min(best, distance(pointAt(c, (lo + hi) / 2), px, py));
+        return best * best;
+    }
+
+    private static double[] pointAt(double[] c, double t) {
+        double u = 1 - t;
+        return new double[]{u * u * c[0] + 2 * u * t * c[2] + t * t * c[4], u * u * c[1] + 2 * u * t * c[3] + t * t * c[5]};
+    }
+
+    private static double distance(double[] p, double x, double y) {
+        return Math.hypot(p[0] - x, p[1] - y);
+    }
+
+    private static double outside(double[] p, double cx, double cy, double a, double b, boolean circle) {
+        double x = p[0] - cx, y = p[1] - cy;
+        return circle ? Math.hypot(x, y) - a : Math.max(Math.abs(x) - a, Math.abs(y) - b);
+    }
+}
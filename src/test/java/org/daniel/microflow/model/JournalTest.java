@@ -0,0 +1,169 @@
+package org.daniel.microflow.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Journals written synchronously, by running their executor on the calling thread, and read back as after a crash.
+ */
+public class JournalTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Path journals;
+
+    @Before
+    public void useFolder() {
+        journals = folder.getRoot().toPath().resolve("autosave");
+        System.setProperty("microflow.autosave.dir", journals.toString());
+    }
+
+    @After
+    public void restoreFolder() {
+        System.clearProperty("microflow.autosave.dir");
+    }
+
+    @Test
+    public void graphBase() throws IOException {
+        Graph g = Samples.graph(30);
+        new Journal(g, Runnable::run, null);
+        edit(g);
+        assertEquals(Samples.contents(g), Samples.contents(recover()));
+    }
+
+    @Test
+    public void fileBase() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("diagram.mcf");
+        Samples.graph(30).save(file.toString(), FileFormat.JSON, ProgressListener.NONE);
+        Graph g = new Graph();
+        g.load(file.toString(), ProgressListener.NONE);
+        new Journal(g, Runnable::run, file.toFile());
+        assertEquals(file.toAbsolutePath().toFile(), Journal.getSource(journal()));
+        edit(g);
+        assertEquals(Samples.contents(g), Samples.contents(recover()));
+    }
+
+    @Test
+    public void savedBecomesBase() throws IOException {
+        Graph g = Samples.graph(30);
+        Journal journal = new Journal(g, Runnable::run, null);
+        edit(g);
+        Path file = folder.getRoot().toPath().resolve("saved.mcf");
+        g.save(file.toString(), FileFormat.BINARY, ProgressListener.NONE);
+        journal.saved(file);
+        assertEquals(1, Files.readAllLines(journal(), StandardCharsets.UTF_8).size());
+
+        g.beginEdit();
+        g.moveNode(g.getNodes().get(0), new Point(15, 25));
+        g.endEdit();
+        assertEquals(Samples.contents(g), Samples.contents(recover()));
+    }
+
+    @Test
+    public void changedFileIsNotReplayed() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("diagram.mcf");
+        Samples.graph(10).save(file.toString(), FileFormat.JSON, ProgressListener.NONE);
+        Graph g = new Graph();
+        g.load(file.toString(), ProgressListener.NONE);
+        new Journal(g, Runnable::run, file.toFile());
+        edit(g);
+
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+        assertStale();
+        Files.delete(file);
+        assertStale();
+    }
+
+    @Test
+    public void lastRecordCutShort() throws IOException {
+        Graph g = Samples.graph(10);
+        new Journal(g, Runnable::run, null);
+        edit(g);
+        String expected = Samples.contents(g);
+        Files.write(journal(), "{\"node\":{\"id\":".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertEquals(expected, Samples.contents(recover()));
+    }
+
+    @Test
+    public void closeDeletes() throws IOException {
+        Graph g = Samples.graph(5);
+        Journal journal = new Journal(g, Runnable::run, null);
+        edit(g);
+        journal.close();
+        try (Stream<Path> files = Files.list(journals)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    /**
+     * Moves, renames, adds and deletes elements, each in its own edit.
+     */
+    private static void edit(Graph g) {
+        List<Node> nodes = g.getNodes();
+        g.beginEdit();
+        g.moveNode(nodes.get(nodes.size() - 1), new Point(700, 80));
+        g.endEdit();
+
+        g.beginEdit();
+        Node node = nodes.get(1);
+        g.record(node);
+        node.setName("Renamed");
+        g.endEdit();
+
+        g.beginEdit();
+        Node added = new Node(NodeType.VARIABLE, "Added", new Point(900, 900), g);
+        g.addNode(added);
+        g.addEdge(new Edge(EdgeType.OPERATION, "set", nodes.get(0), added, g));
+        g.endEdit();
+
+        g.beginEdit();
+        g.deleteNode(nodes.get(5));
+        g.endEdit();
+
+        g.beginEdit();
+        g.deleteEdge(g.getEdges().get(0));
+        g.endEdit();
+    }
+
+    private Path journal() throws IOException {
+        try (Stream<Path> files = Files.list(journals)) {
+            List<Path> found = files.filter(p -> p.toString().endsWith(".journal")).collect(Collectors.toList());
+            assertEquals(1, found.size());
+            return found.get(0);
+        }
+    }
+
+    private Graph recover() throws IOException {
+        Graph recovered = new Graph();
+        recovered.recover(journal());
+        return recovered;
+    }
+
+    private void assertStale() throws IOException {
+        try {
+            recover();
+            fail("Replayed a journal onto a changed file");
+        } catch (Journal.StaleException expected) {
+            assertTrue(expected.getMessage().contains("diagram.mcf"));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.daniel.microflow.model;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Adler32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class PngFormatTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void combinedChecksums() {
+        Random random = new Random(5);
+        // Lengths around the modulus of Adler-32, where the combination wraps
+        int[] lengths = {0, 1, 2, 100, 5551, 5552, 65520, 65521, 65522, 2 * 65521, 300000};
+        for (int first : lengths) {
+            for (int second : lengths) {
+                byte[] a = new byte[first], b = new byte[second];
+                random.nextBytes(a);
+                random.nextBytes(b);
+                assertEquals("lengths " + first + " and " + second, adler32(a, b),
+                        PngFormat.combineAdler32(adler32(a), adler32(b), second));
+            }
+        }
+    }
+
+    @Test
+    public void combinedChecksumsOfConstantData() {
+        // All 0xFF maximizes both sums, to catch a missing reduction
+        byte[] a = new byte[70000], b = new byte[130000];
+        Arrays.fill(a, (byte) 0xFF);
+        Arrays.fill(b, (byte) 0xFF);
+        assertEquals(adler32(a, b), PngFormat.combineAdler32(adler32(a), adler32(b), b.length));
+    }
+
+    @Test
+    public void readableInManyStrips() throws IOException {
+        Graph g = Samples.graph(200);
+        Rectangle area = g.getContentBounds();
+        for (double scale : new double[]{1, 0.37, 2.5}) {
+            Path file = folder.getRoot().toPath().resolve("image.png");
+            g.exportPng(file.toString(), area, scale, Color.WHITE, ProgressListener.NONE);
+            BufferedImage image = ImageIO.read(file.toFile());
+            assertNotNull(image);
+            assertEquals((int) Math.ceil(area.width * scale), image.getWidth());
+            assertEquals((int) Math.ceil(area.height * scale), image.getHeight());
+            // The corner is background, and something was drawn
+            assertEquals(Color.WHITE.getRGB(), image.getRGB(image.getWidth() - 1, 0));
+            boolean drawn = false;
+            for (int y = 0; y < image.getHeight() && !drawn; y++) {
+                for (int x = 0; x < image.getWidth() && !drawn; x++) {
+                    drawn = image.getRGB(x, y) != Color.WHITE.getRGB();
+                }
+            }
+            assertTrue(drawn);
+        }
+    }
+
+    private static long adler32(byte[]... parts) {
+        Adler32 adler = new Adler32();
+        for (byte[] p : parts) adler.update(p, 0, p.length);
+        return adler.getValue();
+    }
+}
@@ -0,0 +1,67 @@
+package org.daniel.microflow.model;
+
+import org.daniel.microflow.gson.GraphAdapter;
+
+import java.awt.*;
+
+/**
+ * Graphs with every kind of element, for the tests that write and read them back.
+ */
+final class Samples {
+
+    private Samples() { }
+
+    /**
+     * A diagram with every type of node and edge, a loop, an action, functions, non ASCII names and, with
+     * {@code states} above a few, a long chain of states to fill the tables of the binary format.
+     */
+    static Graph graph(int states) {
+        Graph g = new Graph();
+        Node tad = new Node(NodeType.TAD, "Control", new Point(200, 200), g);
+        Node variable = new Node(NodeType.VARIABLE, "Temperatura", new Point(420, 120), g);
+        Node peripheral = new Node(NodeType.PERIPHERAL, "LCD \u00f1", new Point(420, 300), g);
+        Node text = new Node(NodeType.TEXT, "Nota: \"quoted\" \u00e9\u4e2d", new Point(60, 420), g);
+        g.addNode(tad);
+        g.addNode(variable);
+        g.addNode(peripheral);
+        g.addNode(text);
+
+        Edge read = new Edge(EdgeType.OPERATION, "get", tad, variable, g);
+        read.setAsRead();
+        Edge both = new Edge(EdgeType.OPERATION, "put", peripheral, tad, g);
+        both.setBidirectional(true);
+        g.addEdge(read);
+        g.addEdge(both);
+
+        Node previous = null;
+        for (int i = 0; i < states; i++) {
+            Node state = new Node(NodeType.STATE, String.valueOf(i), new Point(100 + 90 * (i % 20), 600 + 90 * (i / 20)),
+                    g);
+            g.addNode(state);
+            if (previous != null) {
+                Edge transition = new Edge(i % 3 == 0 ? EdgeType.INTERRUPT : EdgeType.TRANSITION, "t" + i, previous,
+                        state, g);
+                g.addEdge(transition);
+            }
+            previous = state;
+        }
+        if (previous != null) {
+            Edge loop = new Edge(EdgeType.TRANSITION, "loop", previous, previous, g);
+            loop.setFunctions("void f() {\n\treturn;\n}");
+            g.addEdge(loop);
+            Action action = new Action(loop, "x = 1;", new Point(previous.getCenter().x + 60, previous.getCenter().y));
+            loop.setAction(action);
+            g.addAction(action);
+        }
+        Edge iface = new Edge(EdgeType.INTERFACE, "irq", tad, previous != null ? previous : variable, g);
+        g.addEdge(iface);
+        return g;
+    }
+
+    /**
+     * Everything that is saved of a graph, to compare two of them.
+     */
+    static String contents(Graph g) {
+        return new GraphAdapter().toJson(g);
+    }
+}
@@ -0,0 +1,78 @@
+package org.daniel.microflow.model;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.awt.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UndoHistoryTest {
+
+    private final Graph open = Samples.graph(20);
+    private final Graph closed = Samples.graph(20);
+
+    @After
+    public void restoreBudget() {
+        open.unregisterHistory();
+        closed.unregisterHistory();
+        Graph.setHistoryBudget(16L * 1024 * 1024, 64L * 1024 * 1024);
+    }
+
+    @Test
+    public void closedGraphLeavesGlobalBudget() {
+        open.registerHistory();
+        closed.registerHistory();
+        move(closed, 20);
+        move(open, 5);
+        long openFootprint = open.getHistoryFootprint();
+        long closedFootprint = closed.getHistoryFootprint();
+        assertTrue(closedFootprint > openFootprint);
+        assertEquals(openFootprint + closedFootprint, Graph.getTotalHistoryFootprint());
+
+        closed.unregisterHistory();
+        assertEquals(openFootprint, Graph.getTotalHistoryFootprint());
+
+        // Enough for the open graph alone: the closed one must not make it forget anything
+        Graph.setHistoryBudget(Long.MAX_VALUE, 2 * openFootprint);
+        move(open, 1);
+        assertTrue(open.getHistoryFootprint() > openFootprint);
+        assertEquals(open.getHistoryFootprint(), Graph.getTotalHistoryFootprint());
+        int undone = 0;
+        while (open.canUndo()) {
+            open.undo();
+            undone++;
+        }
+        assertEquals(6, undone);
+    }
+
+    @Test
+    public void openGraphsShareGlobalBudget() {
+        open.registerHistory();
+        closed.registerHistory();
+        move(closed, 20);
+        move(open, 5);
+        long openFootprint = open.getHistoryFootprint();
+        long closedFootprint = closed.getHistoryFootprint();
+
+        // The oldest edits, those of the other graph, are forgotten first
+        Graph.setHistoryBudget(Long.MAX_VALUE, 2 * openFootprint);
+        move(open, 1);
+        assertTrue(Graph.getTotalHistoryFootprint() <= 2 * openFootprint);
+        assertTrue(open.getHistoryFootprint() > openFootprint);
+        assertTrue(closed.getHistoryFootprint() < closedFootprint);
+    }
+
+    /**
+     * Moves the first node of the graph the given number of times, each in its own edit.
+     */
+    private static void move(Graph g, int times) {
+        Node node = g.getNodes().get(0);
+        for (int i = 0; i < times; i++) {
+            g.beginEdit();
+            g.moveNode(node, new Point(node.getCenter().x + 10, node.getCenter().y));
+            g.endEdit();
+        }
+    }
+}